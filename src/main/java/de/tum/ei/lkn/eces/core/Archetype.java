@@ -0,0 +1,256 @@
+package de.tum.ei.lkn.eces.core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An Archetype groups all the Entities carrying exactly the same set of
+ * Component types (their signature). For each Component type of the signature,
+ * the Archetype keeps one dense column storing the Components of that type of
+ * all its Entities. Row i of every column belongs to the i-th Entity of the
+ * Archetype.
+ *
+ * The rows of an Archetype are not thread-safe: the ArchetypeStorage accesses
+ * them while holding the monitor of the Archetype. The edges of the Archetype
+ * graph can be read and written concurrently.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+class Archetype {
+	/**
+	 * Number of rows allocated when the Archetype is created.
+	 */
+	private final static int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Identifier of the Archetype within its ArchetypeStorage, giving the
+	 * order in which the monitors of Archetypes are acquired.
+	 */
+	private final int id;
+
+	/**
+	 * Storage indices of the Component types carried by the Entities of the
+	 * Archetype.
+	 */
+	private final BitSet signature;
+
+	/**
+	 * Column of each storage index (-1 if the Component type is not part of
+	 * the signature).
+	 */
+	private final int[] columnOf;
+
+	/**
+	 * Columns of Components. The first dimension is the column, the second the
+	 * row.
+	 */
+	private Component[][] columns;
+
+	/**
+	 * Entity of each row.
+	 */
+	private Entity[] entities;
+
+	/**
+	 * Number of rows in use (readable without the monitor of the Archetype).
+	 */
+	private volatile int size = 0;
+
+	/**
+	 * Archetypes reached when adding a given storage index to the signature.
+	 */
+	private final Map<Integer, Archetype> addEdges = new ConcurrentHashMap<>();
+
+	/**
+	 * Archetypes reached when removing a given storage index from the
+	 * signature.
+	 */
+	private final Map<Integer, Archetype> removeEdges = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates an empty Archetype.
+	 * @param id Identifier of the Archetype within its ArchetypeStorage.
+	 * @param signature Storage indices of the Component types of the Archetype.
+	 */
+	Archetype(int id, BitSet signature) {
+		this.id = id;
+		this.signature = (BitSet) signature.clone();
+		this.columnOf = new int[signature.length()];
+		Arrays.fill(columnOf, -1);
+		int column = 0;
+		for(int index = signature.nextSetBit(0); index >= 0; index = signature.nextSetBit(index + 1))
+			columnOf[index] = column++;
+		this.columns = new Component[column][INITIAL_CAPACITY];
+		this.entities = new Entity[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Gets the identifier of the Archetype within its ArchetypeStorage.
+	 * @return The identifier.
+	 */
+	int getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the signature of the Archetype. The returned BitSet must not be
+	 * modified.
+	 * @return Storage indices of the Component types of the Archetype.
+	 */
+	BitSet getSignature() {
+		return signature;
+	}
+
+	/**
+	 * Checks whether a Component type is part of the signature.
+	 * @param index Storage index of the Component type.
+	 * @return true if Entities of the Archetype carry this type.
+	 */
+	boolean has(int index) {
+		return index < columnOf.length && columnOf[index] >= 0;
+	}
+
+	/**
+	 * Gets the number of Entities in the Archetype.
+	 * @return number of rows in use.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the Entity stored at a given row.
+	 * @param row The row.
+	 * @return The Entity.
+	 */
+	Entity getEntity(int row) {
+		return entities[row];
+	}
+
+	/**
+	 * Gets the Component of a given type stored at a given row.
+	 * @param index Storage index of the Component type.
+	 * @param row The row.
+	 * @return The Component.
+	 */
+	Component get(int index, int row) {
+		return columns[columnOf[index]][row];
+	}
+
+	/**
+	 * Sets the Component of a given type stored at a given row.
+	 * @param index Storage index of the Component type.
+	 * @param row The row.
+	 * @param component The Component.
+	 */
+	void set(int index, int row, Component component) {
+		columns[columnOf[index]][row] = component;
+	}
+
+	/**
+	 * Gets the column of a given Component type. Only the first size() rows
+	 * are meaningful and the array is only valid until the next modification
+	 * of the Archetype.
+	 * @param index Storage index of the Component type.
+	 * @return The column.
+	 */
+	Component[] getColumn(int index) {
+		return columns[columnOf[index]];
+	}
+
+	/**
+	 * Adds a row for an Entity. The Components of the row are not set.
+	 * @param entity The Entity.
+	 * @return The row of the Entity.
+	 */
+	int addRow(Entity entity) {
+		if(size == entities.length) {
+			int capacity = entities.length * 2;
+			entities = Arrays.copyOf(entities, capacity);
+			for(int column = 0; column < columns.length; column++)
+				columns[column] = Arrays.copyOf(columns[column], capacity);
+		}
+
+		entities[size] = entity;
+		return size++;
+	}
+
+	/**
+	 * Removes a row by moving the last row in its place.
+	 * @param row The row to remove.
+	 * @return The Entity moved to 'row' or null if the last row was removed.
+	 */
+	Entity removeRow(int row) {
+		int last = --size;
+		Entity moved = null;
+		if(row != last) {
+			moved = entities[last];
+			entities[row] = moved;
+			for(Component[] column : columns)
+				column[row] = column[last];
+		}
+
+		entities[last] = null;
+		for(Component[] column : columns)
+			column[last] = null;
+		return moved;
+	}
+
+	/**
+	 * Copies the Components of a row of another Archetype in a row of this
+	 * Archetype. Only the Component types present in both Archetypes are
+	 * copied.
+	 * @param from Source Archetype.
+	 * @param fromRow Row in the source Archetype.
+	 * @param toRow Row in this Archetype.
+	 */
+	void copyRow(Archetype from, int fromRow, int toRow) {
+		for(int index = signature.nextSetBit(0); index >= 0; index = signature.nextSetBit(index + 1))
+			if(from.has(index))
+				set(index, toRow, from.get(index, fromRow));
+	}
+
+	/**
+	 * Gets the cached Archetype reached by adding a Component type.
+	 * @param index Storage index of the Component type.
+	 * @return The Archetype or null if not yet known.
+	 */
+	Archetype getAddEdge(int index) {
+		return addEdges.get(index);
+	}
+
+	/**
+	 * Caches the Archetype reached by adding a Component type.
+	 * @param index Storage index of the Component type.
+	 * @param archetype The Archetype.
+	 */
+	void setAddEdge(int index, Archetype archetype) {
+		addEdges.put(index, archetype);
+	}
+
+	/**
+	 * Gets the cached Archetype reached by removing a Component type.
+	 * @param index Storage index of the Component type.
+	 * @return The Archetype or null if not yet known.
+	 */
+	Archetype getRemoveEdge(int index) {
+		return removeEdges.get(index);
+	}
+
+	/**
+	 * Caches the Archetype reached by removing a Component type.
+	 * @param index Storage index of the Component type.
+	 * @param archetype The Archetype.
+	 */
+	void setRemoveEdge(int index, Archetype archetype) {
+		removeEdges.put(index, archetype);
+	}
+
+	@Override
+	public String toString() {
+		return "Archetype" + signature + " (" + size + " entities)";
+	}
+}
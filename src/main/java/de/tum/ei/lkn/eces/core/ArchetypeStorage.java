@@ -0,0 +1,311 @@
+package de.tum.ei.lkn.eces.core;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Storage grouping the Entities of a Controller by Archetype, i.e., by set of
+ * Component types they carry. Each Archetype stores one dense column per
+ * Component type so that scanning all the Components of a type touches
+ * contiguous arrays instead of following the data of each Entity.
+ *
+ * Attaching or detaching a Component moves the Entity from its Archetype to
+ * the Archetype of its new signature. Entities carrying no Component are not
+ * stored.
+ *
+ * The storage is an index for scans, not the primary copy of the Components:
+ * point lookups (Mapper.get(), getOptimistic(), isIn()) still read the data
+ * array of the Entity, because an Entity can move between Archetypes at any
+ * time and reading its row would need the monitor of its Archetype on every
+ * lookup. Every attached Component is therefore referenced twice, and every
+ * attachment or detachment writes both the Entity and the storage (an extra
+ * reference per Component and per Entity, plus the moves between Archetypes).
+ *
+ * There is no storage-wide lock: moving an Entity holds the monitor of the
+ * Entity (so that the moves of an Entity are serialized) and the monitors of
+ * the two Archetypes involved, acquired by increasing Archetype ID. Readers
+ * only hold the monitor of one Archetype at a time, while copying its rows,
+ * so that structural changes of unrelated Archetypes run in parallel and
+ * snapshots never block the whole storage.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+class ArchetypeStorage {
+	/**
+	 * Logger.
+	 */
+	private final static Logger logger = Logger.getLogger(ArchetypeStorage.class);
+
+	/**
+	 * Next Archetype ID.
+	 */
+	private final AtomicInteger nextArchetypeId = new AtomicInteger();
+
+	/**
+	 * Archetype of Entities without Components. It never holds any Entity
+	 * and is only used as starting point of the Archetype graph.
+	 */
+	private final Archetype root = new Archetype(nextArchetypeId.getAndIncrement(), new BitSet());
+
+	/**
+	 * Map from signatures to their Archetype.
+	 */
+	private final Map<BitSet, Archetype> archetypes = new ConcurrentHashMap<>();
+
+	/**
+	 * Map from storage indices to the Archetypes whose signature contains the
+	 * index.
+	 */
+	private final Map<Integer, List<Archetype>> archetypesWithComponent = new ConcurrentHashMap<>();
+
+	/**
+	 * Stores a Component of an Entity. The Entity is moved to the Archetype
+	 * of its new signature.
+	 * @param entity The Entity.
+	 * @param index Storage index of the Component type.
+	 * @param component The Component.
+	 */
+	@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+	protected void add(Entity entity, int index, Component component) {
+		synchronized(entity) {
+			Archetype from = entity.getArchetype();
+			if(from != null && from.has(index)) {
+				synchronized(from) {
+					from.set(index, entity.getRow(), component);
+				}
+				return;
+			}
+
+			Archetype source = from == null ? root : from;
+			Archetype to = source.getAddEdge(index);
+			if(to == null) {
+				BitSet signature = (BitSet) source.getSignature().clone();
+				signature.set(index);
+				to = getArchetype(signature);
+				source.setAddEdge(index, to);
+			}
+
+			move(entity, from, to, index, component);
+		}
+	}
+
+	/**
+	 * Removes a Component of an Entity. The Entity is moved to the Archetype
+	 * of its new signature.
+	 * @param entity The Entity.
+	 * @param index Storage index of the Component type.
+	 */
+	@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+	protected void remove(Entity entity, int index) {
+		synchronized(entity) {
+			Archetype from = entity.getArchetype();
+			if(from == null || !from.has(index))
+				return;
+
+			Archetype to = from.getRemoveEdge(index);
+			if(to == null) {
+				BitSet signature = (BitSet) from.getSignature().clone();
+				signature.clear(index);
+				to = signature.isEmpty() ? root : getArchetype(signature);
+				from.setRemoveEdge(index, to);
+			}
+
+			move(entity, from, to, index, null);
+		}
+	}
+
+	/**
+	 * Gets the Archetypes whose signature contains a Component type.
+	 * @param index Storage index of the Component type.
+	 * @return Copy of the list of Archetypes.
+	 */
+	protected List<Archetype> getArchetypes(int index) {
+		List<Archetype> list = archetypesWithComponent.get(index);
+		if(list == null)
+			return new ArrayList<>();
+		return new ArrayList<>(list);
+	}
+
+	/**
+	 * Gets all the stored Components of a given type. Each Archetype is only
+	 * locked while its column is copied.
+	 * @param index Storage index of the Component type.
+	 * @return Snapshot of the Components, column after column.
+	 */
+	@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+	protected List<Component> getComponents(int index) {
+		List<Component> components = new ArrayList<>(count(index));
+		List<Archetype> list = archetypesWithComponent.get(index);
+		if(list != null) {
+			for(Archetype archetype : list) {
+				synchronized(archetype) {
+					components.addAll(Arrays.asList(archetype.getColumn(index)).subList(0, archetype.size()));
+				}
+			}
+		}
+		return components;
+	}
+
+	/**
+	 * Gets the Entities stored in the Archetypes whose signature contains all
+	 * the required and none of the excluded Component types. Each Archetype
+	 * is only locked while its rows are copied.
+	 * @param required Storage indices of the required Component types. Must
+	 *                 not be empty.
+	 * @param excluded Storage indices of the excluded Component types.
+	 * @return Snapshot of the Entities.
+	 */
+	@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+	protected List<Entity> getEntities(BitSet required, BitSet excluded) {
+		List<Entity> entities = new ArrayList<>();
+		List<Archetype> list = archetypesWithComponent.get(required.nextSetBit(0));
+		if(list != null) {
+			for(Archetype archetype : list) {
+				if(!matches(archetype, required, excluded))
+					continue;
+				synchronized(archetype) {
+					for(int row = 0; row < archetype.size(); row++)
+						entities.add(archetype.getEntity(row));
+				}
+			}
+		}
+		return entities;
+	}
+
+	/**
+	 * Gets the number of Entities stored in the Archetypes whose signature
+	 * contains all the required and none of the excluded Component types. No
+	 * lock is acquired: the count is a snapshot of each Archetype.
+	 * @param required Storage indices of the required Component types. Must
+	 *                 not be empty.
+	 * @param excluded Storage indices of the excluded Component types.
+	 * @return number of Entities.
+	 */
+	protected int count(BitSet required, BitSet excluded) {
+		int count = 0;
+		List<Archetype> list = archetypesWithComponent.get(required.nextSetBit(0));
+		if(list != null)
+			for(Archetype archetype : list)
+				if(matches(archetype, required, excluded))
+					count += archetype.size();
+		return count;
+	}
+
+	/**
+	 * Gets the number of stored Components of a given type. No lock is
+	 * acquired: the count is a snapshot of each Archetype.
+	 * @param index Storage index of the Component type.
+	 * @return number of Components.
+	 */
+	protected int count(int index) {
+		int count = 0;
+		List<Archetype> list = archetypesWithComponent.get(index);
+		if(list != null)
+			for(Archetype archetype : list)
+				count += archetype.size();
+		return count;
+	}
+
+	/**
+	 * Gets the number of Archetypes currently known by the storage.
+	 * @return number of Archetypes.
+	 */
+	protected int getNumberOfArchetypes() {
+		return archetypes.size();
+	}
+
+	/**
+	 * Helper method moving an Entity from its current Archetype to another
+	 * one. The Components shared by both Archetypes are copied. The monitor
+	 * of the Entity must be held.
+	 * @param entity The Entity.
+	 * @param from Current Archetype of the Entity (null if not stored).
+	 * @param to Destination Archetype. If it is the root Archetype, the
+	 *           Entity is simply removed from the storage.
+	 * @param index Storage index of the Component type added or removed.
+	 * @param component Component added (null for a removal).
+	 */
+	private void move(Entity entity, Archetype from, Archetype to, int index, Component component) {
+		if(from == null) {
+			synchronized(to) {
+				int toRow = to.addRow(entity);
+				to.set(index, toRow, component);
+				entity.setArchetype(to, toRow);
+			}
+		} else if(to == root) {
+			synchronized(from) {
+				int fromRow = entity.getRow();
+				entity.setArchetype(null, -1);
+				removeRow(from, fromRow);
+			}
+		} else {
+			Archetype first = from.getId() < to.getId() ? from : to;
+			Archetype second = first == from ? to : from;
+			synchronized(first) {
+				synchronized(second) {
+					int fromRow = entity.getRow();
+					int toRow = to.addRow(entity);
+					to.copyRow(from, fromRow, toRow);
+					if(component != null)
+						to.set(index, toRow, component);
+					entity.setArchetype(to, toRow);
+					removeRow(from, fromRow);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method removing a row of an Archetype and updating the row of
+	 * the Entity moved in its place. The monitor of the Archetype must be
+	 * held.
+	 * @param archetype The Archetype.
+	 * @param row The row.
+	 */
+	private static void removeRow(Archetype archetype, int row) {
+		Entity moved = archetype.removeRow(row);
+		if(moved != null)
+			moved.setArchetype(archetype, row);
+	}
+
+	/**
+	 * Helper method checking whether the signature of an Archetype contains
+	 * all the required and none of the excluded Component types.
+	 * @param archetype The Archetype.
+	 * @param required Storage indices of the required Component types.
+	 * @param excluded Storage indices of the excluded Component types.
+	 * @return true if the Archetype matches.
+	 */
+	private static boolean matches(Archetype archetype, BitSet required, BitSet excluded) {
+		BitSet signature = archetype.getSignature();
+		for(int index = required.nextSetBit(0); index >= 0; index = required.nextSetBit(index + 1))
+			if(!signature.get(index))
+				return false;
+		return !signature.intersects(excluded);
+	}
+
+	/**
+	 * Helper method getting the Archetype of a signature, creating it if it
+	 * does not exist yet.
+	 * @param signature The signature.
+	 * @return The Archetype.
+	 */
+	private Archetype getArchetype(BitSet signature) {
+		return archetypes.computeIfAbsent(signature, k -> {
+			Archetype archetype = new Archetype(nextArchetypeId.getAndIncrement(), signature);
+			for(int index = signature.nextSetBit(0); index >= 0; index = signature.nextSetBit(index + 1))
+				archetypesWithComponent.computeIfAbsent(index, i -> new CopyOnWriteArrayList<>()).add(archetype);
+			logger.trace("New " + archetype + " created.");
+			return archetype;
+		});
+	}
+}
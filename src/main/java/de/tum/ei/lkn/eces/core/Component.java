@@ -3,12 +3,20 @@ package de.tum.ei.lkn.eces.core;
 import org.apache.log4j.Logger;
 import org.json.JSONObject;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A Component is an element attached to an Entity.
  * An Entity can only hold one instance of a given Component type.
  *
+ * Each Component has its own read-write lock, which is only allocated the
+ * first time it is used: Components which are never locked (e.g., Components
+ * which are never attached or clones) do not pay for it. Locks are numbered
+ * in allocation order, so that the locks of several Components can always be
+ * acquired in the same order (see getLockOrder()).
+ *
  * @author Jochen Guck
  * @author Amaury Van Bemten
  */
@@ -19,28 +27,65 @@ public class Component implements Cloneable {
 	private final static Logger logger = Logger.getLogger(Component.class);
 
 	/**
-	 * Read-write lock on the Component.
+	 * Updater allocating the lock of a Component on first use.
+	 */
+	private final static AtomicReferenceFieldUpdater<Component, OrderedLock> lockUpdater =
+			AtomicReferenceFieldUpdater.newUpdater(Component.class, OrderedLock.class, "lock");
+
+	/**
+	 * Number of the next allocated lock.
+	 */
+	private final static AtomicLong nextLockOrder = new AtomicLong();
+
+	/**
+	 * Read-write lock of the Component (null until first used).
+	 */
+	private volatile OrderedLock lock;
+
+	/**
+	 * Entity to which the Component is attached. Volatile so that it can be
+	 * read without taking the monitor of the Component.
+	 */
+	private volatile Entity entity;
+
+	/**
+	 * Gets the read-write lock on the Component. The lock is allocated on
+	 * first use and never changes afterwards.
+	 * @return The lock.
 	 */
-	private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	protected ReentrantReadWriteLock getLock() {
+		return getOrderedLock();
+	}
 
 	/**
-	 * Entity to which the Component is attached.
+	 * Gets the number of the lock of the Component. Locks of several
+	 * Components held at once must be acquired by increasing number.
+	 * @return The number.
 	 */
-	private Entity entity;
+	long getLockOrder() {
+		return getOrderedLock().order;
+	}
 
 	/**
-	 * Gets the read-write lock on the Component.
+	 * Helper method getting the lock of the Component, allocating it if
+	 * needed.
 	 * @return The lock.
 	 */
-	protected synchronized ReentrantReadWriteLock getLock() {
-		return this.lock;
+	private OrderedLock getOrderedLock() {
+		OrderedLock current = lock;
+		if(current == null) {
+			current = new OrderedLock();
+			if(!lockUpdater.compareAndSet(this, null, current))
+				current = lock;
+		}
+		return current;
 	}
 
 	/**
 	* Gets the Entity to which the Component is attached.
 	* @return Entity
 	*/
-	public synchronized Entity getEntity() {
+	public Entity getEntity() {
 		return entity;
 	}
 
@@ -122,8 +167,21 @@ public class Component implements Cloneable {
 			return null;
 		}
 
+		// The clone gets its own lock on first use.
+		clone.lock = null;
 		clone.removeEntity();
-		clone.lock = new ReentrantReadWriteLock();
 		return clone;
 	}
+
+	/**
+	 * Read-write lock numbered in allocation order.
+	 */
+	private static class OrderedLock extends ReentrantReadWriteLock {
+		private static final long serialVersionUID = 3913533029680219605L;
+
+		/**
+		 * Number of the lock.
+		 */
+		private final long order = nextLockOrder.getAndIncrement();
+	}
 }
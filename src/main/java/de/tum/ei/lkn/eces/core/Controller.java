@@ -5,6 +5,9 @@ import com.google.common.collect.*;
 import com.google.common.reflect.TypeToken;
 import de.tum.ei.lkn.eces.core.annotations.ComponentBelongsTo;
 import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
+import de.tum.ei.lkn.eces.core.annotations.RunsAfter;
+import de.tum.ei.lkn.eces.core.annotations.RunsSerially;
+import de.tum.ei.lkn.eces.core.annotations.SparseStorage;
 import de.tum.ei.lkn.eces.core.exceptions.ControllerException;
 import de.tum.ei.lkn.eces.core.exceptions.MapperException;
 import org.apache.log4j.Logger;
@@ -12,6 +15,9 @@ import org.apache.log4j.Logger;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -41,60 +47,111 @@ public class Controller {
 	/**
 	 * Thread pool to which parallel jobs can be submitted.
 	 */
-	private ExecutorService executorService = Executors.newCachedThreadPool(
-			new ThreadFactory() {
-				public Thread newThread(Runnable r) {
-					Thread t = Executors.defaultThreadFactory().newThread(r);
-					t.setDaemon(true);
-					return t;
-				}
-			}
-	);
+	private final ExecutorService executorService;
+
+	/**
+	 * Pool on which the parallel iterations over Components run.
+	 */
+	private volatile ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
+
+	/**
+	 * Views registered to the Controller.
+	 */
+	private final List<View> views = new CopyOnWriteArrayList<>();
 
 	/**
 	 * Number of Systems registered to the Controller.
 	 */
-	private int numberOfSystems = 0;
+	private volatile int numberOfSystems = 0;
+
+	/**
+	 * Number of Entity IDs reserved at once by a thread creating Entities.
+	 */
+	private final static int ENTITY_ID_BLOCK_SIZE = 1024;
+
+	/**
+	 * Next Entity ID that has not been reserved by any thread yet.
+	 */
+	private final AtomicLong nextFreeEntityId = new AtomicLong(0);
+
+	/**
+	 * Block of Entity IDs reserved by each thread. The first element is the
+	 * next ID to use and the second element the end (excluded) of the block.
+	 */
+	private final ThreadLocal<long[]> threadLocalEntityIds = new ThreadLocal<>();
+
+	/**
+	 * IDs of destroyed Entities which can be reused. The first element is the
+	 * ID and the second element the generation to give to the next Entity
+	 * using this ID.
+	 */
+	private final Queue<long[]> recycledEntityIds = new ConcurrentLinkedQueue<>();
 
 	/**
-	 * Number of Entity instances created by the System.
+	 * Map from Entity IDs to the Entities created by the Controller.
 	 */
-	private long numberOfEntities = 0;
+	private final Map<Long, Entity> entities = new ConcurrentHashMap<>();
+
+	/**
+	 * Layout of the Entities created once the Controller is sealed: maximum
+	 * number of Components of each System (null if not sealed). Once sealed,
+	 * no new System or Component ID can be assigned, so that Entities can be
+	 * allocated with their final size.
+	 */
+	private volatile int[] sealedEntityLayout = null;
 
 	/**
 	 * Map from System classes to their ID.
 	 */
-	private Map<Class<? extends RootSystem>, Integer> systemClassToId = new HashMap<>();
+	private final Map<Class<? extends RootSystem>, Integer> systemClassToId = new ConcurrentHashMap<>();
 
 	/**
 	 * Map from System ID to System classes.
 	 */
-	private Map<Integer, Class<? extends RootSystem>> systemIdToClass = new HashMap<>();
+	private final Map<Integer, Class<? extends RootSystem>> systemIdToClass = new ConcurrentHashMap<>();
 
 	/**
 	 * Map from System ID to System objects.
 	 */
-	private Map<Integer, RootSystem> systemIdToObject = new HashMap<>();
+	private final Map<Integer, RootSystem> systemIdToObject = new ConcurrentHashMap<>();
 
 	/**
 	 * Map from System IDs to their maximum Component count.
 	 */
-	private Map<Integer, Integer> systemIdToMaxComponentCount = new HashMap<>();
+	private final Map<Integer, Integer> systemIdToMaxComponentCount = new ConcurrentHashMap<>();
 
 	/**
 	 * Map from Component classes to their ID within their System.
 	 */
-	private Map<Class<? extends Component>, Integer> componentToId = new HashMap<>();
+	private final Map<Class<? extends Component>, Integer> componentToId = new ConcurrentHashMap<>();
 
 	/**
 	 * Map from Component IDs ("systemId"-"componentId") to their class.
 	 */
-	private Map<String, Class<? extends Component>> componentIdToClass = new HashMap<>();
+	private final Map<String, Class<? extends Component>> componentIdToClass = new ConcurrentHashMap<>();
+
+	/**
+	 * Map from Component IDs ("systemId"-"componentId") to their storage
+	 * index, i.e., a Controller-wide index of the Component class.
+	 */
+	private final Map<String, Integer> componentIdToStorageIndex = new ConcurrentHashMap<>();
+
+	/**
+	 * Storage grouping the Entities by set of Component types they carry.
+	 */
+	private final ArchetypeStorage archetypeStorage = new ArchetypeStorage();
+
+	/**
+	 * Map from storage indices to the sparse set storing the Components of
+	 * the corresponding class (only for classes with the SparseStorage
+	 * annotation).
+	 */
+	private final Map<Integer, SparseSet> storageIndexToSparseSet = new ConcurrentHashMap<>();
 
 	/**
 	 * Map from Component classes to their Mapper.
 	 */
-	private Map<Class<? extends Component>, Mapper> componentClassToMapper = new HashMap<>();
+	private final Map<Class<? extends Component>, Mapper> componentClassToMapper = new ConcurrentHashMap<>();
 
 	/**
 	 * Maps an owner and a LocalComponent class to the index of the data of this
@@ -134,6 +191,66 @@ public class Controller {
 	 */
 	private final SetMultimap<Class<? extends Component>, Listener> listenersToDeletedEvents = HashMultimap.create();
 
+	/**
+	 * Dispatch tables of the listeners of each concrete Component class: the
+	 * table of a class holds, for each ComponentStatus (by ordinal), all the
+	 * listeners to the class, its parent classes and Component. Tables are
+	 * computed on first use from a snapshot of the listeners and the whole
+	 * object is replaced when a System is registered.
+	 */
+	private volatile DispatchTables dispatchTables = new DispatchTables(ImmutableSetMultimap.of(), ImmutableSetMultimap.of(), ImmutableSetMultimap.of());
+
+	/**
+	 * Batch listeners, i.e., listeners taking a List of Components, for each
+	 * ComponentStatus (by ordinal). Computed when a System is registered.
+	 */
+	private volatile Listener[][] batchListeners = new Listener[ComponentStatus.values().length][0];
+
+	/**
+	 * Systems registered to the Controller, by registration order.
+	 */
+	private final List<RootSystem> systems = new ArrayList<>();
+
+	/**
+	 * Order in which the listeners of the Systems run (see RunsAfter): map
+	 * from each registered System, in a topological order, to the Systems
+	 * whose listeners must have finished before its listeners start. Null
+	 * as long as no registered System declares an order, in which case all
+	 * the listeners of an event run in parallel.
+	 */
+	private volatile Map<RootSystem, List<RootSystem>> systemOrder = null;
+
+	/**
+	 * Mailboxes of the Systems whose listeners run serially (see
+	 * RunsSerially).
+	 */
+	private final Map<RootSystem, Executor> serialLanes = new ConcurrentHashMap<>();
+
+	/**
+	 * Whether the listeners are deferred until the next flush() instead of
+	 * being run when a MapperSpace is closed.
+	 */
+	private volatile boolean deferredListeners = false;
+
+	/**
+	 * Whether the MapperSpaces record the Components subject to each event.
+	 * They are only needed by batch listeners, Systems running serially or
+	 * in a given order and deferred listeners: as long as none of them is
+	 * used, MapperSpaces do not record anything.
+	 */
+	private volatile boolean recordChangedComponents = false;
+
+	/**
+	 * Events accumulated, while the listeners are deferred, since the last
+	 * flush().
+	 */
+	private MapperData pendingListeners = new MapperData();
+
+	/**
+	 * Lock guarding pendingListeners.
+	 */
+	private final Object pendingLock = new Object();
+
 	/**
 	 * Gets the default Controller. The Controller returned is always the same
 	 * instance.
@@ -143,11 +260,83 @@ public class Controller {
 		return defaultController;
 	}
 
+	/**
+	 * Creates a new Controller running the listeners on an unbounded pool of
+	 * daemon threads.
+	 */
+	public Controller() {
+		this(ExecutionStrategy.cachedPool());
+	}
+
+	/**
+	 * Creates a new Controller running the listeners on the ExecutorService
+	 * created by a given strategy.
+	 * @param strategy The strategy.
+	 */
+	public Controller(ExecutionStrategy strategy) {
+		this(strategy.createExecutorService());
+	}
+
+	/**
+	 * Creates a new Controller running the listeners on a given
+	 * ExecutorService. The ExecutorService is shut down when the Controller
+	 * is closed.
+	 * @param executorService The ExecutorService.
+	 * @throws ControllerException if the ExecutorService is null.
+	 */
+	public Controller(ExecutorService executorService) {
+		if(executorService == null)
+			throw new ControllerException("The ExecutorService of a Controller cannot be null.");
+		this.executorService = executorService;
+		if(executorService instanceof RingBufferDispatcher)
+			((RingBufferDispatcher) executorService).setJobRunner(this::runIsolated);
+	}
+
 
 	public void close(){
 		executorService.shutdown();
 	}
 
+	/**
+	 * Gets the bounded queue through which the listener jobs are dispatched.
+	 * @return The DispatchQueue, or null if the Controller does not use any
+	 *         (see ExecutionStrategy.bounded()).
+	 */
+	public DispatchQueue getDispatchQueue() {
+		return executorService instanceof DispatchQueue ? (DispatchQueue) executorService : null;
+	}
+
+	/**
+	 * Gets the pool on which the parallel iterations over Components run.
+	 * @return The pool.
+	 */
+	public ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
+
+	/**
+	 * Sets the pool on which the parallel iterations over Components run.
+	 * The default pool is the common ForkJoinPool.
+	 * @param forkJoinPool The pool.
+	 */
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		if(forkJoinPool == null)
+			throw new ControllerException("The ForkJoinPool of a Controller cannot be null.");
+		this.forkJoinPool = forkJoinPool;
+	}
+
+	/**
+	 * Runs in parallel an action on all the Components of a given class which
+	 * are currently attached to an Entity.
+	 * See Mapper.parallelForEach().
+	 * @param componentClassType Class of the Components.
+	 * @param action Action to run on each Component.
+	 * @param <C> Class of the Components.
+	 */
+	public <C extends Component> void parallelForEach(Class<C> componentClassType, Consumer<? super C> action) {
+		this.<C>getMapper(componentClassType).parallelForEach(action);
+	}
+
 	/**
 	 * Gets the MapperData for current thread.
 	 * @return The MapperData object.
@@ -174,8 +363,7 @@ public class Controller {
 	 */
 	public MapperSpace startMapperSpace() {
 		// Getting the data of current thread.
-		MapperData data = threadLocalMemory.get();
-		if(data != null) {
+		if(threadLocalMemory.get() != null) {
 			/* MapperSpace is already started in this thread so no need to
 			 * start it and neither to close it. */
 			return new MapperSpace() {
@@ -190,9 +378,17 @@ public class Controller {
 		} else {
 			/* No Mapper Space yet. We create new data for it and we define how
 			 * it will be closed. */
-			threadLocalMemory.set(new MapperData());
+			MapperData data = new MapperData(recordChangedComponents);
+			threadLocalMemory.set(data);
 			logger.debug("Mapper Space started (thread: " + Thread.currentThread().getId() + ")");
 			return new MapperSpace() {
+				/**
+				 * Whether the MapperSpace has already been closed (closing
+				 * it again, e.g., closeAsync() in a try-with-resources
+				 * statement, has no effect).
+				 */
+				private boolean closed = false;
+
 				@Override
 				public String toString() {
 					return "New MapperSpace started";
@@ -200,26 +396,18 @@ public class Controller {
 
 				@Override
 				public void close() {
+					if(closed)
+						return;
+					closed = true;
 					try {
 						logger.debug( "Closing Mapper Space (thread: " + Thread.currentThread().getId() + ").");
+						applyJobs(data);
+						if(deferredListeners && data.isRecordingChangedComponents()) {
+							deferListeners(data);
+							data.stopWritePhase();
+							return;
+						}
 
-						MapperData data = threadLocalMemory.get();
-						data.startWritePhase();
-						// Releasing read locks acquired by the MapperSpace.
-						for(ReentrantReadWriteLock.ReadLock readlock : data.getReadLocks())
-							readlock.unlock();
-						data.removeReadLocks();
-
-						/* Because users are supposed to first delete Components,
-						 * then create some Components and finally update some
-						 * Components, we process the operations in the following
-						 * order: detach, attach, update. */
-						logger.debug( "Processing detachments (thread: " + Thread.currentThread().getId() + ").");
-						detachComponents(data);
-						logger.debug( "Processing attachments (thread: " + Thread.currentThread().getId() + ").");
-						attachComponents(data);
-						logger.debug( "Processing updates (thread: " + Thread.currentThread().getId() + ").");
-						updateComponents(data);
 						logger.debug( "Processing update listeners (thread: " + Thread.currentThread().getId() + ").");
 						processUpdateListeners(data);
 						logger.debug( "Processing attachment listeners (thread: " + Thread.currentThread().getId() + ").");
@@ -229,16 +417,475 @@ public class Controller {
 
 						data.stopWritePhase();
 					} finally {
-						/* We finally remove the MapperData of this thread so that
-					 	* another MapperSpace can be opened later. */
-						resetThreadLocal();
-						logger.debug( "Mapper Space closed (thread: " + Thread.currentThread().getId() + ").");
+						releaseMapperSpace(data);
 					}
 				}
+
+				@Override
+				public CompletableFuture<Void> closeAsync() {
+					if(closed)
+						return CompletableFuture.completedFuture(null);
+					closed = true;
+					boolean deferred = deferredListeners && data.isRecordingChangedComponents();
+					try {
+						logger.debug( "Closing Mapper Space asynchronously (thread: " + Thread.currentThread().getId() + ").");
+						applyJobs(data);
+						if(deferred)
+							deferListeners(data);
+						data.stopWritePhase();
+					} finally {
+						releaseMapperSpace(data);
+					}
+					if(deferred)
+						return CompletableFuture.completedFuture(null);
+
+					/* The phases of listeners are chained so that they keep
+					 * the order of close(). The first failure of a listener is
+					 * reported once all the phases have run. */
+					AtomicReference<Throwable> failure = new AtomicReference<>();
+					CompletableFuture<Void> result = new CompletableFuture<>();
+					runListenersAsync(data, ComponentStatus.Updated, failure)
+							.thenCompose(v -> runListenersAsync(data, ComponentStatus.New, failure))
+							.thenCompose(v -> runListenersAsync(data, ComponentStatus.Destroyed, failure))
+							.whenComplete((v, e) -> {
+								if(e == null)
+									e = failure.get();
+								if(e == null)
+									result.complete(null);
+								else
+									result.completeExceptionally(e);
+							});
+					return result;
+				}
 			};
 		}
 	}
 
+	/**
+	 * Defers (or not) the listeners. When deferred, closing a MapperSpace
+	 * still applies its attachments, detachments and updates immediately, but
+	 * the events are accumulated, deduplicated per Component and event, until
+	 * the next call to flush(). This avoids waiting for the listeners at the
+	 * end of each of many small MapperSpaces (e.g., in a simulation loop where
+	 * listeners run once per tick). Disabling the mode flushes the pending
+	 * events. MapperSpaces started before the mode is enabled still run their
+	 * listeners when closed.
+	 * @param deferred true to defer the listeners until flush().
+	 */
+	public void setDeferredListeners(boolean deferred) {
+		this.deferredListeners = deferred;
+		updateRecordChangedComponents();
+		if(!deferred)
+			flush();
+	}
+
+	/**
+	 * Helper method updating whether the MapperSpaces record the Components
+	 * subject to each event (see recordChangedComponents).
+	 */
+	private void updateRecordChangedComponents() {
+		boolean record = deferredListeners || systemOrder != null || !serialLanes.isEmpty();
+		for(Listener[] listeners : batchListeners)
+			record |= listeners.length > 0;
+		this.recordChangedComponents = record;
+	}
+
+	/**
+	 * Tells whether the listeners are deferred until flush().
+	 * @return true if the listeners are deferred.
+	 */
+	public boolean isDeferredListeners() {
+		return deferredListeners;
+	}
+
+	/**
+	 * Runs the listeners to the events accumulated since the last flush (see
+	 * setDeferredListeners()) and waits for them. Each listener is run once
+	 * per Component and event: a Component attached and updated several times
+	 * is notified once of its attachment and once of its updates (or once per
+	 * update for the listeners not coalescing updates), and updates of
+	 * Components detached before the flush are dropped. As when closing a
+	 * MapperSpace, update listeners run first, then attachment and detachment
+	 * listeners. Events caused by the listeners themselves are delivered at
+	 * the next flush.
+	 */
+	public void flush() {
+		MapperData data;
+		synchronized(this.pendingLock) {
+			data = pendingListeners;
+			pendingListeners = new MapperData();
+		}
+		if(data.getChangedComponents(ComponentStatus.New).isEmpty()
+				&& data.getChangedComponents(ComponentStatus.Updated).isEmpty()
+				&& data.getChangedComponents(ComponentStatus.Destroyed).isEmpty())
+			return;
+
+		logger.debug("Flushing deferred listeners (thread: " + Thread.currentThread().getId() + ").");
+		processUpdateListeners(data);
+		processAttachmentListeners(data);
+		processDetachmentListeners(data);
+	}
+
+	/**
+	 * Helper method adding the events of a MapperSpace being closed to the
+	 * events waiting for the next flush().
+	 * @param data MapperData object of the MapperSpace.
+	 */
+	private void deferListeners(MapperData data) {
+		synchronized(this.pendingLock) {
+			MapperData pending = pendingListeners;
+			for(Component component : data.getChangedComponents(ComponentStatus.Destroyed))
+				if(pending.addChangedComponentOnce(ComponentStatus.Destroyed, component) && hasListeners(component, ComponentStatus.Destroyed))
+					pending.addDetachmentListener(() -> runDetachmentListeners(component));
+			for(Component component : data.getChangedComponents(ComponentStatus.New))
+				if(pending.addChangedComponentOnce(ComponentStatus.New, component) && hasListeners(component, ComponentStatus.New))
+					pending.addAttachmentListener(() -> runAttachmentListeners(component));
+			for(Component component : getEventComponents(data, ComponentStatus.Updated)) {
+				int updates = data.getUpdateCount(component);
+				pending.addUpdateCount(component, updates);
+				if(pending.addChangedComponentOnce(ComponentStatus.Updated, component)) {
+					updates--;
+					if(hasListeners(component, ComponentStatus.Updated)) {
+						pending.addUpdateListener(() -> {
+							if(!pending.isDetached(component))
+								runUpdateListeners(component, pending.getUpdateCount(component));
+						});
+					}
+				}
+				// Batch listeners not coalescing updates get each update.
+				for(int i = 0; i < updates; i++)
+					pending.addChangedComponent(ComponentStatus.Updated, component);
+			}
+		}
+	}
+
+	/**
+	 * Helper method executing the jobs of a MapperSpace being closed and
+	 * refreshing the Views accordingly. The read locks acquired by the
+	 * MapperSpace are released before and the MapperSpace is left in write
+	 * phase.
+	 * @param data MapperData object of the MapperSpace.
+	 */
+	private void applyJobs(MapperData data) {
+		data.startWritePhase();
+		// Releasing read locks acquired by the MapperSpace.
+		for(ReentrantReadWriteLock.ReadLock readlock : data.getReadLocks())
+			readlock.unlock();
+		data.removeReadLocks();
+
+		/* Because users are supposed to first delete Components,
+		 * then create some Components and finally update some
+		 * Components, we process the operations in the following
+		 * order: detach, attach, update. */
+		logger.debug( "Processing detachments (thread: " + Thread.currentThread().getId() + ").");
+		detachComponents(data);
+		logger.debug( "Processing attachments (thread: " + Thread.currentThread().getId() + ").");
+		attachComponents(data);
+		logger.debug( "Processing updates (thread: " + Thread.currentThread().getId() + ").");
+		updateComponents(data);
+		logger.debug( "Refreshing views (thread: " + Thread.currentThread().getId() + ").");
+		refreshViews(data);
+	}
+
+	/**
+	 * Helper method terminating a MapperSpace: the read locks still held are
+	 * released and the MapperData of the thread is removed.
+	 * @param data MapperData object of the MapperSpace.
+	 */
+	private void releaseMapperSpace(MapperData data) {
+		/* Releasing the read locks acquired by the listeners,
+		 * which would otherwise block any later write on their
+		 * Components. */
+		for(ReentrantReadWriteLock.ReadLock readlock : data.getReadLocks())
+			readlock.unlock();
+		data.removeReadLocks();
+
+		/* We finally remove the MapperData of this thread so that
+		 * another MapperSpace can be opened later. */
+		resetThreadLocal();
+		logger.debug( "Mapper Space closed (thread: " + Thread.currentThread().getId() + ").");
+	}
+
+	/**
+	 * Helper method running the listeners to a given event following the
+	 * order of the Systems: the listeners of a System are started as soon as
+	 * the listeners of the Systems it runs after have finished.
+	 * @param data MapperData object containing the events.
+	 * @param status The event.
+	 * @param failure Reference in which the first failure of a listener is
+	 *                stored (may be null).
+	 * @return Future completed once all the listeners have run.
+	 */
+	private CompletableFuture<Void> runOrderedListeners(MapperData data, ComponentStatus status, AtomicReference<Throwable> failure) {
+		List<Component> components = getEventComponents(data, status);
+		Map<RootSystem, CompletableFuture<Void>> futures = new HashMap<>();
+		for(Map.Entry<RootSystem, List<RootSystem>> entry : systemOrder.entrySet()) {
+			CompletableFuture<?>[] predecessors = new CompletableFuture<?>[entry.getValue().size()];
+			for(int i = 0; i < predecessors.length; i++)
+				predecessors[i] = futures.get(entry.getValue().get(i));
+			RootSystem system = entry.getKey();
+			futures.put(system, CompletableFuture.allOf(predecessors).thenCompose(v -> runSystemListeners(data, status, system, components, failure)));
+		}
+		return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()]));
+	}
+
+	/**
+	 * Helper method running the listeners of the Systems whose listeners run
+	 * serially to a given event, each System on its mailbox.
+	 * @param data MapperData object containing the events.
+	 * @param status The event.
+	 * @param failure Reference in which the first failure of a listener is
+	 *                stored (may be null).
+	 * @return Future completed once all the listeners have run.
+	 */
+	private CompletableFuture<Void> runSerialListeners(MapperData data, ComponentStatus status, AtomicReference<Throwable> failure) {
+		if(serialLanes.isEmpty())
+			return CompletableFuture.completedFuture(null);
+
+		List<Component> components = getEventComponents(data, status);
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for(RootSystem system : serialLanes.keySet())
+			futures.add(runSystemListeners(data, status, system, components, failure));
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+	}
+
+	/**
+	 * Helper method getting the Components subject to a given event in a
+	 * MapperSpace. Updates are coalesced per Component and dropped for
+	 * Components detached in the MapperSpace, as with the per-Component jobs.
+	 * @param data MapperData object containing the events.
+	 * @param status The event.
+	 * @return List of Components.
+	 */
+	private List<Component> getEventComponents(MapperData data, ComponentStatus status) {
+		List<Component> components = data.getChangedComponents(status);
+		if(status == ComponentStatus.Updated) {
+			Set<Component> updated = new LinkedHashSet<>(components);
+			updated.removeIf(data::isDetached);
+			components = new ArrayList<>(updated);
+		}
+		return components;
+	}
+
+	/**
+	 * Helper method submitting to the thread pool (or to the mailbox of the
+	 * System) the listeners of a System to a given event.
+	 * @param data MapperData object containing the events.
+	 * @param status The event.
+	 * @param system The System.
+	 * @param components Components subject to the event.
+	 * @param failure Reference in which the first failure of a listener is
+	 *                stored (may be null).
+	 * @return Future completed once all the listeners have run, even if some
+	 *         of them failed.
+	 */
+	private CompletableFuture<Void> runSystemListeners(MapperData data, ComponentStatus status, RootSystem system, List<Component> components, AtomicReference<Throwable> failure) {
+		List<Runnable> jobs = new ArrayList<>();
+		for(Component component : components) {
+			for(Listener task : getTasks(component, status)) {
+				if(task.getObject() == system) {
+					int updates = status == ComponentStatus.Updated ? data.getUpdateCount(component) : 1;
+					jobs.add(()->runListeners(component, status, system, updates));
+					break;
+				}
+			}
+		}
+		jobs.addAll(getBatchJobs(data, status, system));
+
+		Executor executor = serialLanes.getOrDefault(system, executorService);
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[jobs.size()];
+		for(int i = 0; i < futures.length; i++) {
+			futures[i] = runListenerJob(isolated(jobs.get(i)), executor).whenComplete((v, e) -> {
+				if(e != null) {
+					Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+					logger.error("Execution exception in " + status + " listeners of " + system + ".", cause);
+					if(failure != null)
+						failure.compareAndSet(null, cause);
+				}
+			});
+		}
+		return CompletableFuture.allOf(futures).handle((v, e) -> null);
+	}
+
+	/**
+	 * Helper method running the listeners of a System to an event of a
+	 * Component.
+	 * @param component Component subject to the event.
+	 * @param status The event.
+	 * @param system The System.
+	 * @param updates Number of updates of the Component (for updates).
+	 */
+	private void runListeners(Component component, ComponentStatus status, RootSystem system, int updates) {
+		for(Listener task : getTasks(component, status)) {
+			if(task.getObject() != system)
+				continue;
+			int runs = task.isCoalesced() ? 1 : updates;
+			for(int i = 0; i < runs; i++)
+				task.runTask(component);
+		}
+	}
+
+	/**
+	 * Helper method waiting for the listeners of an event.
+	 * A thread running the mailbox of a System does not wait: the listeners
+	 * may run on the mailbox of another System whose thread is itself
+	 * waiting for a job queued on the mailbox of the current thread. The
+	 * listeners then run later, still in order on their mailboxes, and their
+	 * failures are logged.
+	 * @param future Future completed once the listeners have run.
+	 * @param phase Name of the event, for logging.
+	 */
+	private void waitForListeners(CompletableFuture<Void> future, String phase) {
+		if(SerialExecutor.isProcessingThread() && !future.isDone()) {
+			logger.debug(phase + " listeners not awaited by the mailbox of a System (thread: " + Thread.currentThread().getId() + ").");
+			return;
+		}
+		if(executorService instanceof RingBufferDispatcher)
+			((RingBufferDispatcher) executorService).helpUntilDone(future);
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			logger.error(phase + " listeners interrupted.", e);
+		} catch (ExecutionException e) {
+			logger.error("Execution exception in " + phase.toLowerCase() + " listeners.", e);
+		}
+	}
+
+	/**
+	 * Helper method submitting a listener job to the thread pool.
+	 * If the pool is a ForkJoinPool and the current thread is one of its
+	 * workers (i.e., a listener closing a MapperSpace), the job is forked on
+	 * the queue of the thread: waiting for it then runs it or helps the
+	 * thread having stolen it, instead of blocking the thread.
+	 * @param job The job.
+	 * @return Future of the job.
+	 */
+	private Future<?> submitListenerJob(Runnable job) {
+		if(executorService instanceof ForkJoinPool && ForkJoinTask.getPool() == executorService)
+			return ForkJoinTask.adapt(job).fork();
+		try {
+			return executorService.submit(job);
+		} catch (RejectedExecutionException e) {
+			logger.warn("Listener job rejected: " + e.getMessage());
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	/**
+	 * Helper method running a listener job on an Executor.
+	 * A job rejected by the Executor (see DispatchQueue) is dropped.
+	 * @param job The job.
+	 * @param executor The Executor.
+	 * @return Future completed once the job has run.
+	 */
+	private CompletableFuture<Void> runListenerJob(Runnable job, Executor executor) {
+		try {
+			return CompletableFuture.runAsync(job, executor);
+		} catch (RejectedExecutionException e) {
+			logger.warn("Listener job rejected: " + e.getMessage());
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	/**
+	 * Helper method wrapping a listener job so that it runs outside of any
+	 * MapperSpace of the executing thread. This allows executors to run jobs
+	 * in the thread closing a MapperSpace (e.g., inline execution): the
+	 * MapperSpace being closed is restored after the job.
+	 * @param job The job.
+	 * @return The wrapped job.
+	 */
+	private Runnable isolated(Runnable job) {
+		return () -> runIsolated(job);
+	}
+
+	/**
+	 * Helper method running a listener job outside of any MapperSpace of the
+	 * executing thread (see isolated()).
+	 * @param job The job.
+	 */
+	private void runIsolated(Runnable job) {
+		MapperData outer = threadLocalMemory.get();
+		if(outer == null) {
+			job.run();
+			return;
+		}
+		threadLocalMemory.remove();
+		try {
+			job.run();
+		} finally {
+			threadLocalMemory.set(outer);
+		}
+	}
+
+	/**
+	 * Helper method publishing to the ring buffer all the listeners to a given
+	 * event listed in a MapperData object and waiting for them. The jobs are
+	 * published with a single Barrier: no Future is created.
+	 * @param ring The ring buffer.
+	 * @param jobs Listener jobs of the MapperData object.
+	 * @param data MapperData object containing the jobs to execute.
+	 * @param status The event.
+	 * @param phase Name of the event, for logging.
+	 */
+	private void runRingListeners(RingBufferDispatcher ring, List<Runnable> jobs, MapperData data, ComponentStatus status, String phase) {
+		RingBufferDispatcher.Barrier barrier = ring.openBarrier();
+		try {
+			for(int i = 0; i < jobs.size(); i++)
+				ring.publish(jobs.get(i), barrier);
+			for(Runnable job : getBatchJobs(data, status))
+				ring.publish(job, barrier);
+		} catch (RejectedExecutionException e) {
+			logger.warn("Listener job rejected: " + e.getMessage());
+		}
+		CompletableFuture<Void> serialListeners = runSerialListeners(data, status, null);
+		ring.await(barrier);
+		waitForListeners(serialListeners, phase);
+	}
+
+	/**
+	 * Helper method submitting to the thread pool all the listeners to a given
+	 * event listed in a MapperData object.
+	 * @param data MapperData object containing the jobs to execute.
+	 * @param status The event.
+	 * @param failure Reference in which the first failure of a listener is
+	 *                stored.
+	 * @return Future completed once all the listeners have run.
+	 */
+	private CompletableFuture<Void> runListenersAsync(MapperData data, ComponentStatus status, AtomicReference<Throwable> failure) {
+		if(systemOrder != null)
+			return runOrderedListeners(data, status, failure);
+
+		List<Runnable> jobs = new ArrayList<>();
+		switch(status) {
+			case New:
+				jobs.addAll(data.getAttachmentListeners());
+				break;
+			case Updated:
+				jobs.addAll(data.getUpdateListeners());
+				break;
+			case Destroyed:
+				jobs.addAll(data.getDetachmentListeners());
+				break;
+			default:
+				break;
+		}
+		jobs.addAll(getBatchJobs(data, status));
+
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[jobs.size()];
+		for(int i = 0; i < futures.length; i++) {
+			futures[i] = runListenerJob(isolated(jobs.get(i)), executorService).whenComplete((v, e) -> {
+				if(e != null) {
+					Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+					logger.error("Execution exception in " + status + " listeners.", cause);
+					failure.compareAndSet(null, cause);
+				}
+			});
+		}
+		// Failures are already recorded: the next phase runs anyway.
+		return CompletableFuture.allOf(CompletableFuture.allOf(futures), runSerialListeners(data, status, failure)).handle((v, e) -> null);
+	}
+
 	/**
 	 * Resets the data of all Threads.
 	 */
@@ -292,6 +939,8 @@ public class Controller {
 			try {
 				for(Runnable task : job.getValue())
 					task.run();
+				if(job.getKey().getEntity() != null)
+					entityModified(job.getKey().getEntity());
 
 				if(data.getReadLocks().size() > 0) {
 					/* Throwing an exception inside a MapperSpace will exit the
@@ -308,6 +957,92 @@ public class Controller {
 		}
 	}
 
+	/**
+	 * Helper method refreshing the Views for the Entities modified by the
+	 * jobs listed in a MapperData object.
+	 * @param data MapperData object containing the modified Entities.
+	 */
+	private void refreshViews(MapperData data) {
+		if(views.isEmpty() || data.getModifiedEntities().isEmpty())
+			return;
+
+		/* All the write locks have been released: the Filters of the Views
+		 * may acquire read locks, which are released right after. */
+		data.stopWritePhase();
+		try {
+			for(Entity entity : data.getModifiedEntities())
+				for(View view : views)
+					view.refresh(entity);
+		} finally {
+			for(ReentrantReadWriteLock.ReadLock readlock : data.getReadLocks())
+				readlock.unlock();
+			data.removeReadLocks();
+			data.startWritePhase();
+		}
+	}
+
+	/**
+	 * Registers that the Components of an Entity have been modified so that
+	 * its membership to the Views is checked again. Within the closure of a
+	 * MapperSpace, this is done once all the jobs have been executed.
+	 * @param entity The Entity.
+	 */
+	protected void entityModified(Entity entity) {
+		if(views.isEmpty())
+			return;
+
+		MapperData data = threadLocalMemory.get();
+		if(data != null && data.isWritePhase()) {
+			data.addModifiedEntity(entity);
+		} else {
+			try(MapperSpace ms = startMapperSpace()) {
+				for(View view : views)
+					view.refresh(entity);
+			}
+		}
+	}
+
+	/**
+	 * Registers a View on the Entities carrying a Component of each of some
+	 * given classes. The View is kept up to date by the Controller.
+	 * @param componentClasses The classes.
+	 * @return The View.
+	 */
+	public View registerView(Class<?>... componentClasses) {
+		return registerView(new Filter[0], componentClasses);
+	}
+
+	/**
+	 * Registers a View on the Entities carrying a Component of each of some
+	 * given classes and whose Component of the first class is accepted by
+	 * some Filters. The View is kept up to date by the Controller.
+	 * The Filters must only depend on the Components of the Entity.
+	 * @param filters The Filters.
+	 * @param componentClasses The classes.
+	 * @return The View.
+	 */
+	public View registerView(Filter[] filters, Class<?>... componentClasses) {
+		if(componentClasses.length == 0)
+			throw new ControllerException("A View must be defined on at least one Component class.");
+
+		View view = new View(this, filters, componentClasses);
+		views.add(view);
+		try(MapperSpace ms = startMapperSpace()) {
+			for(Entity entity : entities.values())
+				view.refresh(entity);
+		}
+		logger.debug("View " + view + " registered.");
+		return view;
+	}
+
+	/**
+	 * Unregisters a View. The View is not updated anymore.
+	 * @param view The View.
+	 */
+	public void unregisterView(View view) {
+		views.remove(view);
+	}
+
 	/**
 	 * Helper method calling all the detachment event listeners listed in a
 	 * MapperData object.
@@ -315,11 +1050,23 @@ public class Controller {
 	 */
 	@SuppressWarnings("unchecked")
 	private void processDetachmentListeners(MapperData data) {
+		if(systemOrder != null) {
+			waitForListeners(runOrderedListeners(data, ComponentStatus.Destroyed, null), "Detachment");
+			return;
+		}
+		if(executorService instanceof RingBufferDispatcher) {
+			runRingListeners((RingBufferDispatcher) executorService, data.getDetachmentListeners(), data, ComponentStatus.Destroyed, "Detachment");
+			return;
+		}
+
 		Vector <Future<Object>> futures = new Vector<>();
 
 		// Submitting all the jobs to the thread pool.
 		for(Runnable item : data.getDetachmentListeners())
-			futures.add((Future<Object>) executorService.submit(item));
+			futures.add((Future<Object>) submitListenerJob(isolated(item)));
+		for(Runnable item : getBatchJobs(data, ComponentStatus.Destroyed))
+			futures.add((Future<Object>) submitListenerJob(isolated(item)));
+		CompletableFuture<Void> serialListeners = runSerialListeners(data, ComponentStatus.Destroyed, null);
 
 		for(Future<Object> item : futures) {
 			try {
@@ -331,6 +1078,7 @@ public class Controller {
 				logger.error( "Execution exception in detachment listeners.", e);
 			}
 		}
+		waitForListeners(serialListeners, "Detachment");
 	}
 
 	/**
@@ -340,11 +1088,23 @@ public class Controller {
 	 */
 	@SuppressWarnings("unchecked")
 	private void processAttachmentListeners(MapperData data) {
+		if(systemOrder != null) {
+			waitForListeners(runOrderedListeners(data, ComponentStatus.New, null), "Attachment");
+			return;
+		}
+		if(executorService instanceof RingBufferDispatcher) {
+			runRingListeners((RingBufferDispatcher) executorService, data.getAttachmentListeners(), data, ComponentStatus.New, "Attachment");
+			return;
+		}
+
 		Vector <Future<Object>> futures = new Vector<>();
 
 		// Submitting all the jobs to the thread pool.
 		for(Runnable item : data.getAttachmentListeners())
-			futures.add((Future<Object>) executorService.submit(item));
+			futures.add((Future<Object>) submitListenerJob(isolated(item)));
+		for(Runnable item : getBatchJobs(data, ComponentStatus.New))
+			futures.add((Future<Object>) submitListenerJob(isolated(item)));
+		CompletableFuture<Void> serialListeners = runSerialListeners(data, ComponentStatus.New, null);
 
 		for(Future<Object> item : futures) {
 			try {
@@ -356,6 +1116,7 @@ public class Controller {
 				logger.error( "Execution exception in attachment listeners.", e);
 			}
 		}
+		waitForListeners(serialListeners, "Attachment");
 	}
 
 	/**
@@ -365,11 +1126,23 @@ public class Controller {
 	 */
 	@SuppressWarnings("unchecked")
 	private void processUpdateListeners(MapperData data) {
+		if(systemOrder != null) {
+			waitForListeners(runOrderedListeners(data, ComponentStatus.Updated, null), "Update");
+			return;
+		}
+		if(executorService instanceof RingBufferDispatcher) {
+			runRingListeners((RingBufferDispatcher) executorService, data.getUpdateListeners(), data, ComponentStatus.Updated, "Update");
+			return;
+		}
+
 		Vector <Future<Object>> futures = new Vector<>();
 
 		// Submitting all the jobs to the thread pool.
 		for(Runnable item : data.getUpdateListeners())
-			futures.add((Future<Object>) executorService.submit(item));
+			futures.add((Future<Object>) submitListenerJob(isolated(item)));
+		for(Runnable item : getBatchJobs(data, ComponentStatus.Updated))
+			futures.add((Future<Object>) submitListenerJob(isolated(item)));
+		CompletableFuture<Void> serialListeners = runSerialListeners(data, ComponentStatus.Updated, null);
 
 		for(Future<Object> item : futures) {
 			try {
@@ -381,6 +1154,7 @@ public class Controller {
 				logger.error( "Execution exception in update listeners.", e);
 			}
 		}
+		waitForListeners(serialListeners, "Update");
 	}
 
 	/**
@@ -412,7 +1186,19 @@ public class Controller {
 	 */
 	@SuppressWarnings({"unchecked", "rawtypes" })
 	public <C extends Component> Mapper<C> getMapper(Class componentClassType) {
-		if(!componentClassToMapper.containsKey(componentClassType)) {
+		Mapper mapper = componentClassToMapper.get(componentClassType);
+		if(mapper != null)
+			return mapper;
+
+		/* Creating the Mapper may assign new System, Component and storage
+		 * IDs: it is done under the lock of the Controller (also taken by
+		 * seal() and registerSystem()) so that concurrent first calls cannot
+		 * assign the same ID twice. */
+		synchronized(this) {
+			mapper = componentClassToMapper.get(componentClassType);
+			if(mapper != null)
+				return mapper;
+
 			/* Get system/component ID of provided class type.
 			 * The class for which we get the system/component ID is the first
 			 * parent which is a Component of the System (true parameter for
@@ -421,24 +1207,253 @@ public class Controller {
 			int systemIdentifier = getSystemId((Class<? extends Component>) classList.get(0));
 			Integer componentId = componentToId.get(classList.get(0));
 			if(componentId == null) {
+				checkNotSealed("cannot assign an ID to Component class " + classList.get(0).getName());
 				Integer maxCount = systemIdToMaxComponentCount.getOrDefault(systemIdentifier, 0);
-				componentToId.put((Class<? extends Component>) classList.get(0), maxCount);
 				componentIdToClass.put(systemIdentifier + "-" + maxCount, (Class<? extends Component>) classList.get(0));
-				systemIdToMaxComponentCount.put(systemIdentifier, ++maxCount);
-				componentId = componentToId.get(classList.get(0));
+				int storageIndex = componentIdToStorageIndex.size();
+				if(classList.get(0).isAnnotationPresent(SparseStorage.class))
+					storageIndexToSparseSet.put(storageIndex, new SparseSet());
+				componentIdToStorageIndex.put(systemIdentifier + "-" + maxCount, storageIndex);
+				systemIdToMaxComponentCount.put(systemIdentifier, maxCount + 1);
+				// Published last: lock-free readers only see complete IDs.
+				componentToId.put((Class<? extends Component>) classList.get(0), maxCount);
+				componentId = maxCount;
 			}
 			int componentIdentifier = componentId;
-			componentClassToMapper.put(componentClassType, new Mapper(this, systemIdentifier, componentIdentifier, componentClassType));
+			mapper = new Mapper(this, systemIdentifier, componentIdentifier, componentClassType);
+			componentClassToMapper.put(componentClassType, mapper);
+			return mapper;
 		}
-		return componentClassToMapper.get(componentClassType);
+	}
+
+	/**
+	 * Creates a Query visiting the Entities carrying a Component of a given
+	 * class.
+	 * @param classA Class of the Component.
+	 * @param <A> Class of the Component.
+	 * @return The Query.
+	 */
+	public <A extends Component> Query1<A> query(Class<A> classA) {
+		return new Query1<>(this, classA);
+	}
+
+	/**
+	 * Creates a Query visiting the Entities carrying a Component of each of two
+	 * given classes.
+	 * @param classA Class of the first Component.
+	 * @param classB Class of the second Component.
+	 * @param <A> Class of the first Component.
+	 * @param <B> Class of the second Component.
+	 * @return The Query.
+	 */
+	public <A extends Component, B extends Component> Query2<A, B> query(Class<A> classA, Class<B> classB) {
+		return new Query2<>(this, classA, classB);
+	}
+
+	/**
+	 * Creates a Query visiting the Entities carrying a Component of each of
+	 * three given classes.
+	 * @param classA Class of the first Component.
+	 * @param classB Class of the second Component.
+	 * @param classC Class of the third Component.
+	 * @param <A> Class of the first Component.
+	 * @param <B> Class of the second Component.
+	 * @param <C> Class of the third Component.
+	 * @return The Query.
+	 */
+	public <A extends Component, B extends Component, C extends Component> Query3<A, B, C> query(Class<A> classA, Class<B> classB, Class<C> classC) {
+		return new Query3<>(this, classA, classB, classC);
 	}
 
 	/**
 	 * Creates a new Entity.
+	 * The ID of a destroyed Entity is reused if there is one, with an
+	 * incremented generation. Otherwise, the ID of the Entity is taken from a
+	 * block of IDs reserved by the current thread so that threads can create
+	 * Entities in parallel without contending on a common counter. IDs are
+	 * unique among living Entities but Entities created by different threads
+	 * do not have consecutive IDs.
 	 * @return The created Entity.
 	 */
 	public Entity createEntity() {
-		return new Entity(numberOfEntities++, numberOfSystems);
+		long[] recycled = recycledEntityIds.poll();
+		if(recycled != null)
+			return registerEntity(newEntity(recycled[0], (int) recycled[1]));
+
+		long[] block = threadLocalEntityIds.get();
+		if(block == null) {
+			block = new long[2];
+			threadLocalEntityIds.set(block);
+		}
+		if(block[0] == block[1]) {
+			block[0] = nextFreeEntityId.getAndAdd(ENTITY_ID_BLOCK_SIZE);
+			block[1] = block[0] + ENTITY_ID_BLOCK_SIZE;
+		}
+
+		return registerEntity(newEntity(block[0]++, 0));
+	}
+
+	/**
+	 * Creates several new Entities at once. The Entities get consecutive
+	 * fresh IDs (IDs of destroyed Entities are not reused) reserved with a
+	 * single atomic operation.
+	 * @param n Number of Entities to create.
+	 * @return List of the created Entities.
+	 */
+	public List<Entity> createEntities(int n) {
+		if(n < 0)
+			throw new ControllerException("Cannot create a negative number of Entities (" + n + ").");
+
+		long firstId = nextFreeEntityId.getAndAdd(n);
+		List<Entity> created = new ArrayList<>(n);
+		for(long id = firstId; id < firstId + n; id++)
+			created.add(registerEntity(newEntity(id, 0)));
+		return created;
+	}
+
+	/**
+	 * Helper method allocating an Entity. If the Controller is sealed, the
+	 * Entity is allocated with its final layout so that attaching Components
+	 * to it never requires to extend it.
+	 * @param id ID of the Entity.
+	 * @param generation Generation of the Entity.
+	 * @return The Entity.
+	 */
+	private Entity newEntity(long id, int generation) {
+		int[] layout = sealedEntityLayout;
+		if(layout != null)
+			return new Entity(id, layout, generation);
+		return new Entity(id, numberOfSystems, generation);
+	}
+
+	/**
+	 * Helper method adding an Entity to the registry of the Controller.
+	 * @param entity The Entity.
+	 * @return The Entity.
+	 */
+	private Entity registerEntity(Entity entity) {
+		entities.put(entity.getId(), entity);
+		return entity;
+	}
+
+	/**
+	 * Destroys an Entity created by the Controller.
+	 * The Entity is destroyed when the MapperSpace of the caller (if any) is
+	 * closed, after the other detachments of the MapperSpace and in call
+	 * order with its attachments: the Entity is then marked as destroyed, all
+	 * the Components it has at that point are detached (the detachment
+	 * listeners being run once per Component), and the Entity is removed
+	 * from the Controller with its ID made available for new Entities, with
+	 * an incremented generation. Attaching a Component to the Entity later
+	 * in the same MapperSpace or once it is destroyed fails.
+	 * @param entity The Entity to destroy.
+	 * @throws ControllerException if the Entity is not a living Entity of the
+	 *                             Controller or is already destroyed in the
+	 *                             MapperSpace.
+	 */
+	public void destroyEntity(Entity entity) {
+		try(MapperSpace ms = startMapperSpace()) {
+			if(!isAlive(entity) || !getMapperData().addDestroyedEntity(entity))
+				throw new ControllerException("Entity " + entity.getId() + " (generation " + entity.getGeneration() + ") is not a living Entity of this Controller.");
+
+			/* Added to the attachment jobs so that attachments issued before
+			 * the destruction are applied (and then undone) rather than
+			 * refused. */
+			getMapperData().addEntityAttachmentJob(()->{
+				if(!entity.markDestroyed())
+					return true;
+				for(Component component : entity.getComponents())
+					getMapper(component.getClass()).detachComponentNow(entity, component);
+				entities.remove(entity.getId(), entity);
+				recycledEntityIds.add(new long[]{entity.getId(), entity.getGeneration() + 1L});
+				logger.trace("Entity " + entity.getId() + " (generation " + entity.getGeneration() + ") destroyed.");
+				return true;
+			});
+		}
+	}
+
+	/**
+	 * Tells whether an Entity is a living Entity of the Controller, i.e., has
+	 * been created by the Controller and has not been destroyed.
+	 * @param entity The Entity.
+	 * @return true if the Entity is alive, false otherwise.
+	 */
+	public boolean isAlive(Entity entity) {
+		return !entity.isDestroyed() && entities.get(entity.getId()) == entity;
+	}
+
+	/**
+	 * Gets an Entity created by the Controller.
+	 * @param id ID of the Entity.
+	 * @return The Entity or null if no living Entity with this ID has been
+	 *         created by the Controller.
+	 */
+	public Entity getEntity(long id) {
+		return entities.get(id);
+	}
+
+	/**
+	 * Gets an Entity created by the Controller, checking its generation.
+	 * This allows to detect stale handles (ID and generation pairs) pointing
+	 * to an Entity which has been destroyed and whose ID has been reused.
+	 * @param id ID of the Entity.
+	 * @param generation Generation of the Entity.
+	 * @return The Entity or null if no living Entity with this ID and
+	 *         generation exists.
+	 */
+	public Entity getEntity(long id, int generation) {
+		Entity entity = entities.get(id);
+		if(entity == null || entity.getGeneration() != generation)
+			return null;
+		return entity;
+	}
+
+	/**
+	 * Gets the number of living Entities created by the Controller.
+	 * @return number of Entities.
+	 */
+	public int getNumberOfEntities() {
+		return entities.size();
+	}
+
+	/**
+	 * Seals the Controller. This ends the bootstrap phase of the Controller:
+	 * the System and Component IDs known at that time are frozen and no new
+	 * System class or Component class (with a ComponentBelongsTo annotation)
+	 * can be used afterwards. In exchange, the Entities created after sealing
+	 * are allocated with their final layout and attaching Components to them
+	 * never has to extend them.
+	 *
+	 * Mappers for all the Component classes that will be used (or for their
+	 * annotated parent) must hence be obtained before sealing.
+	 */
+	public synchronized void seal() {
+		if(sealedEntityLayout != null)
+			return;
+
+		int[] layout = new int[numberOfSystems];
+		for(int systemId = 0; systemId < numberOfSystems; systemId++)
+			layout[systemId] = systemIdToMaxComponentCount.getOrDefault(systemId, 0);
+		sealedEntityLayout = layout;
+		logger.debug(this + " sealed with " + numberOfSystems + " Systems and " + componentToId.size() + " Component classes.");
+	}
+
+	/**
+	 * Tells whether the Controller is sealed.
+	 * @return true if seal() has been called, false otherwise.
+	 */
+	public boolean isSealed() {
+		return sealedEntityLayout != null;
+	}
+
+	/**
+	 * Helper method throwing an exception if the Controller is sealed.
+	 * @param what Description of what is refused.
+	 * @throws ControllerException if the Controller is sealed.
+	 */
+	private void checkNotSealed(String what) {
+		if(sealedEntityLayout != null)
+			throw new ControllerException("Controller is sealed: " + what + ".");
 	}
 
 	/**
@@ -455,18 +1470,35 @@ public class Controller {
 	 * @throws ControllerException if one tries to register a System which is
 	 *                             already registered.
 	 */
-	protected void registerSystem(RootSystem system) {
+	protected synchronized void registerSystem(RootSystem system) {
 		if(registeredSystems.contains(system.getClass()))
 			throw new ControllerException("Tried to register a System (" + system.getClass() + ") which is already registered.");
+		if(!systemClassToId.containsKey(system.getClass()))
+			checkNotSealed("cannot assign an ID to System class " + system.getClass().getName());
+		checkRunsAfter(system.getClass(), new ArrayDeque<>());
+		Map<RootSystem, List<RootSystem>> systemOrder = this.systemOrder;
+		if(systemOrder != null || system.getClass().isAnnotationPresent(RunsAfter.class)) {
+			List<RootSystem> orderedSystems = new ArrayList<>(systems);
+			orderedSystems.add(system);
+			systemOrder = computeSystemOrder(orderedSystems);
+		}
 
 		// Add all the listeners of the System.
 		listenersToNewEvents.putAll(findAllListeners(system, ComponentStatus.New));
 		listenersToUpdatedEvents.putAll(findAllListeners(system, ComponentStatus.Updated));
 		listenersToDeletedEvents.putAll(findAllListeners(system, ComponentStatus.Destroyed));
+		dispatchTables = new DispatchTables(ImmutableSetMultimap.copyOf(listenersToNewEvents),
+				ImmutableSetMultimap.copyOf(listenersToUpdatedEvents),
+				ImmutableSetMultimap.copyOf(listenersToDeletedEvents));
+		Listener[][] batchListeners = new Listener[ComponentStatus.values().length][0];
+		batchListeners[ComponentStatus.New.ordinal()] = getBatchTasks(listenersToNewEvents);
+		batchListeners[ComponentStatus.Updated.ordinal()] = getBatchTasks(listenersToUpdatedEvents);
+		batchListeners[ComponentStatus.Destroyed.ordinal()] = getBatchTasks(listenersToDeletedEvents);
+		this.batchListeners = batchListeners;
 		if(!systemClassToId.containsKey(system.getClass())) {
-			systemClassToId.put(system.getClass(), numberOfSystems);
 			systemIdToObject.put(numberOfSystems, system);
-			systemIdToClass.put(numberOfSystems++, system.getClass());
+			systemIdToClass.put(numberOfSystems, system.getClass());
+			systemClassToId.put(system.getClass(), numberOfSystems++);
 		}
 		else {
 			int sysID = systemClassToId.get(system.getClass());
@@ -474,18 +1506,94 @@ public class Controller {
 		}
 
 		registeredSystems.add(system.getClass());
+		systems.add(system);
+		if(system.getClass().isAnnotationPresent(RunsSerially.class))
+			serialLanes.put(system, new SerialExecutor(executorService instanceof DispatchQueue ? ((DispatchQueue) executorService).getExecutorService() : executorService));
+		this.systemOrder = systemOrder;
+		updateRecordChangedComponents();
 
 		logger.debug("New System " + system + " registered to " + this + ".");
 	}
 
+	/**
+	 * Helper method checking that the order of a System class with respect to
+	 * other Systems (see RunsAfter) is not cyclic.
+	 * @param systemClass The System class.
+	 * @param path Classes which, transitively, must run after systemClass.
+	 * @throws ControllerException if the order is cyclic.
+	 */
+	private void checkRunsAfter(Class<?> systemClass, Deque<Class<?>> path) {
+		if(path.contains(systemClass)) {
+			StringBuilder cycle = new StringBuilder(systemClass.getName());
+			for(Class<?> clazz : path) {
+				cycle.insert(0, clazz.getName() + " -> ");
+				if(clazz == systemClass)
+					break;
+			}
+			throw new ControllerException("Cyclic order of Systems (A -> B: A runs after B): " + cycle + ".");
+		}
+
+		RunsAfter runsAfter = systemClass.getAnnotation(RunsAfter.class);
+		if(runsAfter == null)
+			return;
+		path.push(systemClass);
+		for(Class<? extends RootSystem> predecessor : runsAfter.value())
+			checkRunsAfter(predecessor, path);
+		path.pop();
+	}
+
+	/**
+	 * Helper method computing the order in which the listeners of the given
+	 * Systems run. Systems which are not ordered with respect to each other
+	 * are kept in the given order.
+	 * @param systems The Systems.
+	 * @return Map from each System, in a topological order, to the Systems it
+	 *         runs after.
+	 * @throws ControllerException if the order of the Systems is cyclic,
+	 *                             which can happen even if the order of the
+	 *                             classes is not (e.g., two Systems running
+	 *                             after RootSystem).
+	 */
+	private Map<RootSystem, List<RootSystem>> computeSystemOrder(List<RootSystem> systems) {
+		Map<RootSystem, List<RootSystem>> predecessors = new HashMap<>();
+		for(RootSystem system : systems) {
+			List<RootSystem> list = new ArrayList<>();
+			RunsAfter runsAfter = system.getClass().getAnnotation(RunsAfter.class);
+			if(runsAfter != null)
+				for(Class<? extends RootSystem> predecessorClass : runsAfter.value())
+					for(RootSystem other : systems)
+						if(other != system && predecessorClass.isInstance(other) && !list.contains(other))
+							list.add(other);
+			predecessors.put(system, list);
+		}
+
+		// Each pass places at least one System, unless the order is cyclic.
+		Map<RootSystem, List<RootSystem>> order = new LinkedHashMap<>();
+		while(order.size() < systems.size()) {
+			int placed = order.size();
+			for(RootSystem system : systems)
+				if(!order.containsKey(system) && order.keySet().containsAll(predecessors.get(system)))
+					order.put(system, Collections.unmodifiableList(predecessors.get(system)));
+			if(order.size() == placed) {
+				StringBuilder cyclic = new StringBuilder();
+				for(RootSystem system : systems)
+					if(!order.containsKey(system))
+						cyclic.append(cyclic.length() == 0 ? "" : ", ").append(system.getClass().getName());
+				throw new ControllerException("Cyclic order of Systems (between " + cyclic + ").");
+			}
+		}
+		return Collections.unmodifiableMap(order);
+	}
+
 	/**
 	 * Runs all the methods listening to creations of a given Component type.
 	 * @param component Component instance given to the listener method as
 	 *                  parameter.
 	 */
 	protected void runAttachmentListeners(Component component) {
-		for(Listener task : getTasks(component, listenersToNewEvents))
-			task.runTask(component);
+		for(Listener task : getTasks(component, ComponentStatus.New))
+			if(!task.isSerial())
+				task.runTask(component);
 	}
 
 	/**
@@ -494,8 +1602,9 @@ public class Controller {
 	 *                  parameter.
 	 */
 	protected void runDetachmentListeners(Component component) {
-		for(Listener task : getTasks(component, listenersToDeletedEvents))
-			task.runTask(component);
+		for(Listener task : getTasks(component, ComponentStatus.Destroyed))
+			if(!task.isSerial())
+				task.runTask(component);
 	}
 
 	/**
@@ -504,8 +1613,25 @@ public class Controller {
 	 *                  parameter.
 	 */
 	protected void runUpdateListeners(Component component) {
-		for(Listener task : getTasks(component, listenersToUpdatedEvents))
-			task.runTask(component);
+		runUpdateListeners(component, 1);
+	}
+
+	/**
+	 * Runs all the methods listening to updates of a given Component type,
+	 * for a Component updated several times. Listeners coalescing updates are
+	 * run once, the others once per update.
+	 * @param component Component instance given to the listener method as
+	 *                  parameter.
+	 * @param updates Number of updates of the Component.
+	 */
+	protected void runUpdateListeners(Component component, int updates) {
+		for(Listener task : getTasks(component, ComponentStatus.Updated)) {
+			if(task.isSerial())
+				continue;
+			int runs = task.isCoalesced() ? 1 : updates;
+			for(int i = 0; i < runs; i++)
+				task.runTask(component);
+		}
 	}
 
 	/**
@@ -523,15 +1649,21 @@ public class Controller {
 
 		Class system = systemClass[0].system();
 		Integer systemId = systemClassToId.get(system);
-		if(systemId == null) {
-			if(!systemClassToId.containsKey(system.getClass())) {
-				systemClassToId.put(system, numberOfSystems);
-				systemIdToClass.put(numberOfSystems++, system);
-			}
+		if(systemId != null)
+			return systemId;
+
+		// Same lock as getMapper() and registerSystem(), which assign IDs too.
+		synchronized(this) {
 			systemId = systemClassToId.get(system);
+			if(systemId == null) {
+				checkNotSealed("cannot assign an ID to System class " + system.getName());
+				systemId = numberOfSystems;
+				systemIdToClass.put(systemId, system);
+				systemClassToId.put(system, systemId);
+				numberOfSystems++;
+			}
+			return systemId;
 		}
-
-		return systemId;
 	}
 
 	/**
@@ -610,22 +1742,191 @@ public class Controller {
 		throw new ControllerException("Component ID " + componentID + " is not known in system ID " + systemID + ".");
 	}
 
+	/**
+	 * Gets the storage of the Components attached to the Entities handled by
+	 * the Controller.
+	 * @return The ArchetypeStorage.
+	 */
+	protected ArchetypeStorage getArchetypeStorage() {
+		return archetypeStorage;
+	}
+
+	/**
+	 * Gets the sparse set storing the Components of a given class.
+	 * @param storageIndex Storage index of the Component class.
+	 * @return The sparse set or null if the Components of this class are
+	 *         stored in the ArchetypeStorage.
+	 */
+	protected SparseSet getSparseSet(int storageIndex) {
+		return storageIndexToSparseSet.get(storageIndex);
+	}
+
+	/**
+	 * Gets the storage index corresponding to a System ID and Component ID.
+	 * @param systemID The System ID.
+	 * @param componentID The Component ID.
+	 * @return The storage index.
+	 * @throws ControllerException if IDs are not known.
+	 */
+	protected int getStorageIndex(int systemID, int componentID) {
+		Integer index = componentIdToStorageIndex.get(systemID + "-" + componentID);
+		if(index != null)
+			return index;
+		throw new ControllerException("Component ID " + componentID + " is not known in system ID " + systemID + ".");
+	}
+
+	/**
+	 * Helper function getting the listeners to a given event of a given
+	 * Component from its dispatch table.
+	 * @param component Subject Component.
+	 * @param status The event.
+	 * @return Array of Listeners. It must not be modified.
+	 */
+	private Listener[] getTasks(Component component, ComponentStatus status) {
+		return getDispatchTable(component.getClass(), dispatchTables)[status.ordinal()];
+	}
+
+	/**
+	 * Helper function getting the dispatch table of a Component class,
+	 * computing it if needed.
+	 * @param componentClass The Component class.
+	 * @param current Dispatch tables in which the table is looked up.
+	 * @return The dispatch table. It must not be modified.
+	 */
+	private Listener[][] getDispatchTable(Class<? extends Component> componentClass, DispatchTables current) {
+		Listener[][] table = current.tables.get(componentClass);
+		if(table == null)
+			table = current.tables.computeIfAbsent(componentClass, type -> newDispatchTable(componentClass, current));
+		return table;
+	}
+
+	/**
+	 * Tells whether an event of a Component has listeners to be run by a
+	 * listener job (batch listeners and listeners of Systems running serially
+	 * do not need one).
+	 * @param component The Component.
+	 * @param status The event.
+	 * @return true if a listener job has to be created for the event.
+	 */
+	protected boolean hasListeners(Component component, ComponentStatus status) {
+		DispatchTables current = dispatchTables;
+		boolean[] flags = current.listenerFlags.get(component.getClass());
+		if(flags == null)
+			flags = current.listenerFlags.computeIfAbsent(component.getClass(), type -> newListenerFlags(getDispatchTable(type, current)));
+		return flags[status.ordinal()];
+	}
+
+	/**
+	 * Helper method computing the listener flags of a Component class from its
+	 * dispatch table (see DispatchTables.listenerFlags).
+	 * @param table The dispatch table.
+	 * @return The flags.
+	 */
+	private boolean[] newListenerFlags(Listener[][] table) {
+		boolean[] flags = new boolean[table.length];
+		for(int i = 0; i < table.length; i++)
+			for(Listener listener : table[i])
+				if(!listener.isSerial())
+					flags[i] = true;
+		return flags;
+	}
+
+	/**
+	 * Helper function computing the dispatch table of a Component class from
+	 * a snapshot of the listeners.
+	 * @param componentClass The Component class.
+	 * @param snapshot The snapshot.
+	 * @return The dispatch table.
+	 */
+	private Listener[][] newDispatchTable(Class<? extends Component> componentClass, DispatchTables snapshot) {
+		Listener[][] table = new Listener[ComponentStatus.values().length][];
+		table[ComponentStatus.New.ordinal()] = getTasks(componentClass, snapshot.listenersToNewEvents);
+		table[ComponentStatus.Updated.ordinal()] = getTasks(componentClass, snapshot.listenersToUpdatedEvents);
+		table[ComponentStatus.Destroyed.ordinal()] = getTasks(componentClass, snapshot.listenersToDeletedEvents);
+		table[ComponentStatus.Any.ordinal()] = new Listener[0];
+		return table;
+	}
+
+	/**
+	 * Helper function getting the batch listeners among a list of jobs
+	 * corresponding to many different classes.
+	 * @param jobs Job Map.
+	 * @return Array of batch Listeners.
+	 */
+	private Listener[] getBatchTasks(SetMultimap<Class<? extends Component>, Listener> jobs) {
+		List<Listener> tasks = new ArrayList<>();
+		for(Listener listener : jobs.values())
+			if(listener.isBatch())
+				tasks.add(listener);
+		return tasks.toArray(new Listener[tasks.size()]);
+	}
+
+	/**
+	 * Helper function creating the jobs running the batch listeners to a
+	 * given event with the Components subject to this event in a MapperSpace.
+	 * Updated Components detached in the MapperSpace are left out and, for
+	 * Listeners coalescing updates, each updated Component is given once.
+	 * @param data MapperData object of the MapperSpace.
+	 * @param status The event.
+	 * @return List of jobs, one per batch Listener.
+	 */
+	private List<Runnable> getBatchJobs(MapperData data, ComponentStatus status) {
+		return getBatchJobs(data, status, null);
+	}
+
+	/**
+	 * Helper function creating the jobs running the batch listeners of a
+	 * given System to a given event (see getBatchJobs(MapperData,
+	 * ComponentStatus)).
+	 * @param data MapperData object of the MapperSpace.
+	 * @param status The event.
+	 * @param system The System, or null for the listeners of all the Systems.
+	 * @return List of jobs, one per batch Listener.
+	 */
+	private List<Runnable> getBatchJobs(MapperData data, ComponentStatus status, RootSystem system) {
+		List<Component> components = data.getChangedComponents(status);
+		Listener[] listeners = batchListeners[status.ordinal()];
+		if(components.isEmpty() || listeners.length == 0)
+			return Collections.emptyList();
+
+		List<Component> coalesced = components;
+		if(status == ComponentStatus.Updated) {
+			List<Component> updated = new ArrayList<>(components.size());
+			for(Component component : components)
+				if(!data.isDetached(component))
+					updated.add(component);
+			components = updated;
+			coalesced = new ArrayList<>(new LinkedHashSet<>(updated));
+		}
+
+		List<Runnable> jobs = new ArrayList<>(listeners.length);
+		for(Listener listener : listeners) {
+			if(system == null ? listener.isSerial() : listener.getObject() != system)
+				continue;
+			List<Component> batch = listener.isCoalesced() ? coalesced : components;
+			jobs.add(()->listener.runBatchTask(batch));
+		}
+		return jobs;
+	}
+
 	/**
 	 * Helper function getting a list of jobs corresponding to a given
 	 * Component's class and parent classes from a list of jobs corresponding
 	 * to many different classes.
-	 * @param component Subject Component.
+	 * @param componentClass Subject Component class.
 	 * @param jobs Initial job Map.
-	 * @return Set of Listeners.
+	 * @return Array of Listeners.
 	 */
-	private Set<Listener> getTasks(Component component, SetMultimap<Class<? extends Component>, Listener> jobs) {
-		Set<Listener> tasks = new HashSet<>();
-		for(Class clazz : getClassHierarchy(component.getClass(), false)) {
+	private Listener[] getTasks(Class<? extends Component> componentClass, SetMultimap<Class<? extends Component>, Listener> jobs) {
+		Set<Listener> tasks = new LinkedHashSet<>();
+		for(Class clazz : getClassHierarchy(componentClass, false)) {
 			//noinspection unchecked
 			tasks.addAll(jobs.get(clazz));
 		}
 		tasks.addAll(jobs.get(Component.class));
-		return tasks;
+		// Batch listeners are not run once per Component.
+		tasks.removeIf(Listener::isBatch);
+		return tasks.toArray(new Listener[tasks.size()]);
 	}
 
 	/**
@@ -642,10 +1943,10 @@ public class Controller {
 		for(Method method : getAnnotatedMethods(clazz)) {
 			ComponentStatus methodState = method.getAnnotation(ComponentStateIs.class).State();
 			if(methodState == status || methodState == ComponentStatus.Any) {
-				Class<?>[] parameterTypes = method.getParameterTypes();
+				Listener listener = new Listener(this, listenerClass, method);
 				@SuppressWarnings("unchecked")
-				Class<? extends Component> componentType = (Class<? extends Component>) parameterTypes[0];
-				listeners.put(componentType, new Listener(this, listenerClass, method));
+				Class<? extends Component> componentType = (Class<? extends Component>) listener.getComponentType();
+				listeners.put(componentType, listener);
 			}
 		}
 		return listeners;
@@ -673,8 +1974,8 @@ public class Controller {
 					if(parameterTypes.length != 1) {
 						logger.warn("Method " + superClassMethod.getName() + " has @ComponentStateIs annotation which requires 1 argument, but has " + parameterTypes.length + " arguments. Method ignored.");
 						continue;
-					} else if(!Component.class.isAssignableFrom(parameterTypes[0])) {
-						logger.warn("Method " + superClassMethod.getName() + " has @ComponentStateIs annotation which requires argument of type Component, but argument has type " + parameterTypes[0] + ". Method ignored.");
+					} else if(!Component.class.isAssignableFrom(parameterTypes[0]) && Listener.getBatchType(superClassMethod) == null) {
+						logger.warn("Method " + superClassMethod.getName() + " has @ComponentStateIs annotation which requires argument of type Component or List of Components, but argument has type " + superClassMethod.getGenericParameterTypes()[0] + ". Method ignored.");
 						continue;
 					}
 					// Add method only if not yet in the Map.
@@ -750,3 +2051,49 @@ final class MethodIdentifier {
     	return false;
     }
 }
+
+/**
+ * Helper class holding the listeners of a Controller at a given time and the
+ * dispatch tables computed from them. The listeners are immutable copies, so
+ * that tables can be computed while a System is being registered, and the
+ * tables are only referenced by the Controller, so that Component classes do
+ * not keep the Controller reachable.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+final class DispatchTables {
+	/**
+	 * Listeners to each event, sorted by Component type.
+	 */
+	final ImmutableSetMultimap<Class<? extends Component>, Listener> listenersToNewEvents;
+	final ImmutableSetMultimap<Class<? extends Component>, Listener> listenersToUpdatedEvents;
+	final ImmutableSetMultimap<Class<? extends Component>, Listener> listenersToDeletedEvents;
+
+	/**
+	 * Dispatch table of each concrete Component class computed so far.
+	 */
+	final ConcurrentHashMap<Class<? extends Component>, Listener[][]> tables = new ConcurrentHashMap<>();
+
+	/**
+	 * Whether each concrete Component class computed so far has, for each
+	 * ComponentStatus (by ordinal), listeners run once per Component outside
+	 * of a mailbox. When it does not, Mappers do not create any listener job
+	 * for the event.
+	 */
+	final ConcurrentHashMap<Class<? extends Component>, boolean[]> listenerFlags = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates empty dispatch tables for a set of listeners.
+	 * @param listenersToNewEvents Listeners to New events.
+	 * @param listenersToUpdatedEvents Listeners to Updated events.
+	 * @param listenersToDeletedEvents Listeners to Destroyed events.
+	 */
+	DispatchTables(ImmutableSetMultimap<Class<? extends Component>, Listener> listenersToNewEvents,
+	               ImmutableSetMultimap<Class<? extends Component>, Listener> listenersToUpdatedEvents,
+	               ImmutableSetMultimap<Class<? extends Component>, Listener> listenersToDeletedEvents) {
+		this.listenersToNewEvents = listenersToNewEvents;
+		this.listenersToUpdatedEvents = listenersToUpdatedEvents;
+		this.listenersToDeletedEvents = listenersToDeletedEvents;
+	}
+}
@@ -0,0 +1,261 @@
+package de.tum.ei.lkn.eces.core;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded queue between the MapperSpaces and the ExecutorService running the
+ * listeners of a Controller.
+ *
+ * At most a given number of listener jobs can be dispatched (i.e., queued or
+ * running) at once. When the queue is full, a new job is handled according to
+ * the OverflowPolicy of the queue: the submitting thread waits for a free
+ * slot, runs the job itself, or the job is rejected.
+ *
+ * A job submitted by a thread which is itself running a dispatched job (a
+ * listener closing a MapperSpace) never waits: as the slot of the thread is
+ * only freed when the thread finishes, waiting could block forever. With the
+ * Block policy, such a job is run by the submitting thread.
+ *
+ * The queue depth and the time spent waiting (by the producers for a slot and
+ * by the jobs in the queue) can be read at any time.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class DispatchQueue extends AbstractExecutorService {
+	/**
+	 * Behavior of the queue when it is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The submitting thread waits until a job finishes.
+		 */
+		Block,
+		/**
+		 * The submitting thread runs the job itself.
+		 */
+		CallerRuns,
+		/**
+		 * The job is rejected and its listeners are not run.
+		 */
+		Reject,
+	}
+
+	/**
+	 * ExecutorService running the jobs.
+	 */
+	private final ExecutorService executorService;
+
+	/**
+	 * Maximum number of dispatched jobs.
+	 */
+	private final int capacity;
+
+	/**
+	 * Behavior of the queue when it is full.
+	 */
+	private final OverflowPolicy policy;
+
+	/**
+	 * Free slots of the queue.
+	 */
+	private final Semaphore slots;
+
+	/**
+	 * Whether the current thread is running a dispatched job.
+	 */
+	private final ThreadLocal<Boolean> inJob = new ThreadLocal<>();
+
+	/**
+	 * Statistics.
+	 */
+	private final LongAdder dispatchedJobs = new LongAdder();
+	private final LongAdder callerRunJobs = new LongAdder();
+	private final LongAdder rejectedJobs = new LongAdder();
+	private final LongAdder blockedNanos = new LongAdder();
+	private final LongAdder queuedNanos = new LongAdder();
+
+	/**
+	 * Creates a new DispatchQueue.
+	 * @param executorService ExecutorService running the jobs.
+	 * @param capacity Maximum number of dispatched jobs.
+	 * @param policy Behavior of the queue when it is full.
+	 */
+	public DispatchQueue(ExecutorService executorService, int capacity, OverflowPolicy policy) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("A dispatch queue needs a capacity of at least one job (" + capacity + " given).");
+		this.executorService = executorService;
+		this.capacity = capacity;
+		this.policy = policy;
+		this.slots = new Semaphore(capacity);
+	}
+
+	@Override
+	public void execute(Runnable job) {
+		if(!slots.tryAcquire()) {
+			if(policy == OverflowPolicy.Reject) {
+				rejectedJobs.increment();
+				throw new RejectedExecutionException("Dispatch queue full (" + capacity + " jobs).");
+			}
+			if(policy == OverflowPolicy.CallerRuns || inJob.get() != null) {
+				callerRunJobs.increment();
+				job.run();
+				return;
+			}
+
+			long start = System.nanoTime();
+			try {
+				slots.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				rejectedJobs.increment();
+				throw new RejectedExecutionException("Interrupted while waiting for the dispatch queue.", e);
+			} finally {
+				blockedNanos.add(System.nanoTime() - start);
+			}
+		}
+
+		long queued = System.nanoTime();
+		try {
+			executorService.execute(() -> {
+				queuedNanos.add(System.nanoTime() - queued);
+				/* The ExecutorService may run the job in the submitting
+				 * thread, which may itself be running a dispatched job. */
+				Boolean previous = inJob.get();
+				inJob.set(Boolean.TRUE);
+				try {
+					job.run();
+				} finally {
+					if(previous == null)
+						inJob.remove();
+					else
+						inJob.set(previous);
+					slots.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			slots.release();
+			throw e;
+		}
+		dispatchedJobs.increment();
+	}
+
+	/**
+	 * Gets the ExecutorService running the jobs.
+	 * @return The ExecutorService.
+	 */
+	public ExecutorService getExecutorService() {
+		return executorService;
+	}
+
+	/**
+	 * Gets the maximum number of dispatched jobs.
+	 * @return The capacity.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the behavior of the queue when it is full.
+	 * @return The policy.
+	 */
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Gets the number of jobs currently dispatched (queued or running).
+	 * @return The depth of the queue.
+	 */
+	public int getDepth() {
+		return capacity - slots.availablePermits();
+	}
+
+	/**
+	 * Gets the number of threads waiting for a free slot.
+	 * @return The number of threads.
+	 */
+	public int getBlockedProducers() {
+		return slots.getQueueLength();
+	}
+
+	/**
+	 * Gets the number of jobs dispatched to the ExecutorService so far.
+	 * @return The number of jobs.
+	 */
+	public long getDispatchedJobs() {
+		return dispatchedJobs.sum();
+	}
+
+	/**
+	 * Gets the number of jobs run by the submitting thread so far.
+	 * @return The number of jobs.
+	 */
+	public long getCallerRunJobs() {
+		return callerRunJobs.sum();
+	}
+
+	/**
+	 * Gets the number of jobs rejected so far.
+	 * @return The number of jobs.
+	 */
+	public long getRejectedJobs() {
+		return rejectedJobs.sum();
+	}
+
+	/**
+	 * Gets the total time the submitting threads waited for a free slot.
+	 * @param unit Unit of the result.
+	 * @return The time.
+	 */
+	public long getBlockedTime(TimeUnit unit) {
+		return unit.convert(blockedNanos.sum(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the total time the dispatched jobs waited before being started by
+	 * the ExecutorService.
+	 * @param unit Unit of the result.
+	 * @return The time.
+	 */
+	public long getQueuedTime(TimeUnit unit) {
+		return unit.convert(queuedNanos.sum(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void shutdown() {
+		executorService.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return executorService.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return executorService.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return executorService.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executorService.awaitTermination(timeout, unit);
+	}
+
+	@Override
+	public String toString() {
+		return "Dispatch queue (" + getDepth() + "/" + capacity + " jobs, " + policy + ")";
+	}
+}
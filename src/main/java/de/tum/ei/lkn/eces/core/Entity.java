@@ -3,11 +3,22 @@ package de.tum.ei.lkn.eces.core;
 import org.apache.log4j.Logger;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 /**
  * An Entity holds Components belonging to different Systems.
  * For a given System, one Entity can only hold one instance of a given
  * Component class.
  *
+ * Reading the Components of an Entity does not block: the rows of Components
+ * are atomic arrays published through a volatile reference, and the array of
+ * rows is replaced (copy-on-write) when the Entity is extended. Modifications
+ * are serialized on the Entity monitor.
+ *
  * @author Jochen Guck
  * @author Amaury Van Bemten
  *
@@ -23,12 +34,51 @@ public class Entity implements Comparable<Entity> {
 	 */
 	private long id;
 
+	/**
+	 * Generation of the Entity. Each time the ID of a destroyed Entity is
+	 * reused for a new Entity, the generation is incremented so that the old
+	 * and new Entities can be distinguished.
+	 */
+	private final int generation;
+
+	/**
+	 * Tells whether the Entity has been destroyed.
+	 */
+	private volatile boolean destroyed = false;
+
 	/**
 	 * Two dimensional array containing the Components attached to the Entity.
 	 * The first dimension represents all the Systems while the second
-	 * dimension corresponds to the Components of each System.
+	 * dimension corresponds to the Components of each System. The first
+	 * dimension is never modified in place: a new array is published when a
+	 * row has to be added or extended. The Components are also stored in the
+	 * ArchetypeStorage of the Controller, which serves scans while this array
+	 * serves point lookups.
+	 */
+	private volatile AtomicReferenceArray<Component>[] data;
+
+	/**
+	 * Archetype in which the Components of the Entity are stored (null if the
+	 * Entity is not stored by any ArchetypeStorage) and row of the Entity in
+	 * this Archetype. The Archetype is changed while holding the monitor of
+	 * the Entity and the row while holding the monitor of the Archetype (see
+	 * ArchetypeStorage).
+	 */
+	private Archetype archetype;
+	private int row = -1;
+
+	/**
+	 * Signature of the Entity: bit i is set if a Component with storage index
+	 * i is attached to the Entity. The array is replaced (copy-on-write) on
+	 * each modification so that it can be read without locking.
+	 */
+	private volatile long[] signature = new long[0];
+
+	/**
+	 * Updater used to replace the signature without taking the monitor of the
+	 * Entity (which may be held by a thread waiting for a Component lock).
 	 */
-	private Component[][] data;
+	private final static AtomicReferenceFieldUpdater<Entity, long[]> signatureUpdater = AtomicReferenceFieldUpdater.newUpdater(Entity.class, long[].class, "signature");
 
 	/**
 	 * Creates an Entity.
@@ -36,6 +86,7 @@ public class Entity implements Comparable<Entity> {
 	 */
 	protected Entity(long id) {
 		this.id = id;
+		this.generation = 0;
 		logger.trace("New Entity created with id '" + id + "'.");
 	}
 
@@ -45,9 +96,20 @@ public class Entity implements Comparable<Entity> {
 	 * @param numSystems number of Systems that the Entity can handle.
 	 */
 	protected Entity(long id, int numSystems) {
+		this(id, numSystems, 0);
+	}
+
+	/**
+	 * Creates an Entity.
+	 * @param id ID of the Entity.
+	 * @param numSystems number of Systems that the Entity can handle.
+	 * @param generation generation of the Entity.
+	 */
+	protected Entity(long id, int numSystems, int generation) {
 		this.id = id;
-		data = new Component[numSystems][];
-		logger.trace("New Entity created with id '" + id + "' and max number of systems '" + numSystems + "'.");
+		this.generation = generation;
+		data = newRows(numSystems);
+		logger.trace("New Entity created with id '" + id + "', generation '" + generation + "' and max number of systems '" + numSystems + "'.");
 	}
 
 	/**
@@ -58,18 +120,88 @@ public class Entity implements Comparable<Entity> {
 		return id;
 	}
 
+	/**
+	 * Creates an Entity with a given layout. The Entity can directly carry
+	 * all the Components described by the layout without being extended.
+	 * @param id ID of the Entity.
+	 * @param layout maximum number of Components of each System.
+	 * @param generation generation of the Entity.
+	 */
+	protected Entity(long id, int[] layout, int generation) {
+		this.id = id;
+		this.generation = generation;
+		AtomicReferenceArray<Component>[] rows = newRows(layout.length);
+		for(int systemIdentifier = 0; systemIdentifier < layout.length; systemIdentifier++)
+			if(layout[systemIdentifier] > 0)
+				rows[systemIdentifier] = new AtomicReferenceArray<>(layout[systemIdentifier]);
+		data = rows;
+		logger.trace("New Entity created with id '" + id + "', generation '" + generation + "' and layout of " + layout.length + " systems.");
+	}
+
+	/**
+	 * Gets the generation of the Entity. Two Entities with the same ID but
+	 * different generations are different Entities: the ID of the older one
+	 * has been reused after it was destroyed.
+	 * @return generation
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Tells whether the Entity has been destroyed.
+	 * @return true if the Entity has been destroyed, false otherwise.
+	 */
+	public boolean isDestroyed() {
+		return destroyed;
+	}
+
+	/**
+	 * Marks the Entity as destroyed.
+	 * @return false if the Entity was already destroyed, true otherwise.
+	 */
+	protected synchronized boolean markDestroyed() {
+		if(destroyed)
+			return false;
+		destroyed = true;
+		return true;
+	}
+
+	/**
+	 * Gets all the Components attached to the Entity.
+	 * @return List of the Components.
+	 */
+	protected List<Component> getComponents() {
+		List<Component> components = new ArrayList<>();
+		AtomicReferenceArray<Component>[] rows = this.data;
+		if(rows != null)
+			for(AtomicReferenceArray<Component> systemComponents : rows)
+				if(systemComponents != null)
+					for(int i = 0; i < systemComponents.length(); i++)
+						if(systemComponents.get(i) != null)
+							components.add(systemComponents.get(i));
+		return components;
+	}
+
 	/**
 	 * Checks if the Entity has a given Component.
 	 * @param systemIdentifier ID of the System.
 	 * @param componentIdentifier ID of the Component within the System.
 	 * @return boolean based on existence or not of the Component.
 	 */
-	protected synchronized boolean hasComponent(int systemIdentifier, int componentIdentifier) {
-		return !(this.data == null
-			|| this.data.length <= systemIdentifier
-			|| this.data[systemIdentifier] == null
-			|| data[systemIdentifier].length <= componentIdentifier
-			|| data[systemIdentifier][componentIdentifier] == null);
+	protected boolean hasComponent(int systemIdentifier, int componentIdentifier) {
+		return getComponent(systemIdentifier, componentIdentifier) != null;
+	}
+
+	/**
+	 * Checks if the Entity has room for a given Component, i.e., whether
+	 * setComponent can be called without extending the Entity first.
+	 * @param systemIdentifier ID of the System.
+	 * @param componentIdentifier ID of the Component within the System.
+	 * @return true if the Entity can hold the Component, false otherwise.
+	 */
+	protected boolean canHold(int systemIdentifier, int componentIdentifier) {
+		return getRow(this.data, systemIdentifier, componentIdentifier) != null;
 	}
 
 	/**
@@ -78,10 +210,11 @@ public class Entity implements Comparable<Entity> {
 	 * @param componentIdentifier ID of the Component within the System.
 	 * @return Component or null if no component with these IDs exist.
 	 */
-	protected synchronized Component getComponent(int systemIdentifier, int componentIdentifier) {
-		if(hasComponent(systemIdentifier, componentIdentifier))
-			return data[systemIdentifier][componentIdentifier];
-		return null;
+	protected Component getComponent(int systemIdentifier, int componentIdentifier) {
+		AtomicReferenceArray<Component> row = getRow(this.data, systemIdentifier, componentIdentifier);
+		if(row == null)
+			return null;
+		return row.get(componentIdentifier);
 	}
 
 	/**
@@ -98,7 +231,7 @@ public class Entity implements Comparable<Entity> {
 		}
 
 		// The Component exists. We can remove it safely.
-		data[systemIdentifier][componentIdentifier] = null;
+		data[systemIdentifier].set(componentIdentifier, null);
 		logger.trace("Component '" + comp + "' (sysID: " + systemIdentifier + ", compID: " + componentIdentifier + ") removed from Entity '" + this + "' (ID: " + this.id + ").");
 		return comp;
 	}
@@ -117,8 +250,11 @@ public class Entity implements Comparable<Entity> {
 	 *                              existing Component.
 	 */
 	protected synchronized void setComponent(Component component, int systemIdentifier, int componentIdentifier) throws ArrayIndexOutOfBoundsException, NullPointerException {
-		data[systemIdentifier][componentIdentifier] = component;
-		data[systemIdentifier][componentIdentifier].setEntity(this);
+		AtomicReferenceArray<Component> row = data[systemIdentifier];
+		if(componentIdentifier < 0 || componentIdentifier >= row.length())
+			throw new ArrayIndexOutOfBoundsException(componentIdentifier);
+		row.set(componentIdentifier, component);
+		component.setEntity(this);
 		this.notifyAll();
 		logger.trace("Component '" + component + "' (sysID: " + systemIdentifier + ", compID: " + componentIdentifier + ") attached to Entity '" + this + "' (ID: " + this.id + ").");
 	}
@@ -135,27 +271,163 @@ public class Entity implements Comparable<Entity> {
 	 *                          specified by systemIdentifier.
 	 */
 	protected synchronized void extend(int systemIdentifier, int maxSystemCount, int maxComponentCount) {
-		// Extending number of Systems if necessary.
-		if(this.data == null || this.data.length < maxSystemCount) {
-			Component[][] temp = this.data;
-			this.data = new Component[maxSystemCount][];
-			if(temp != null)
-				System.arraycopy(temp, 0, this.data, 0, temp.length);
-			logger.trace("New max number of Systems for Entity '" + this + "' (ID: " + this.id + "): " + maxSystemCount + ".");
+		/* The array of rows is copied and then published so that readers
+		 * never observe a partially extended Entity. */
+		AtomicReferenceArray<Component>[] rows = this.data;
+		if(rows != null && rows.length >= maxSystemCount && systemIdentifier < rows.length
+				&& rows[systemIdentifier] != null && rows[systemIdentifier].length() >= maxComponentCount) {
+			// Nothing grows: the rows are not copied.
+			logger.warn("Max number of Components for sysID '" + systemIdentifier + "' not set to " + maxComponentCount + " because already bigger or equal (" + rows[systemIdentifier].length() + ").");
+			return;
 		}
 
+		AtomicReferenceArray<Component>[] extended = newRows(Math.max(maxSystemCount, rows == null ? 0 : rows.length));
+		if(rows != null)
+			System.arraycopy(rows, 0, extended, 0, rows.length);
+		if(rows == null || rows.length < maxSystemCount)
+			logger.trace("New max number of Systems for Entity '" + this + "' (ID: " + this.id + "): " + maxSystemCount + ".");
+
 		// Extending number of Components for specified System if necessary.
-		if(this.data[systemIdentifier] == null || this.data[systemIdentifier].length < maxComponentCount) {
-			Component[] temp = this.data[systemIdentifier];
-			this.data[systemIdentifier] = new Component[maxComponentCount];
-			// Copy the previous Components in the new array.
-			if(temp != null)
-				System.arraycopy(temp, 0, this.data[systemIdentifier], 0, temp.length);
+		AtomicReferenceArray<Component> row = extended[systemIdentifier];
+		if(row == null || row.length() < maxComponentCount) {
+			extended[systemIdentifier] = new AtomicReferenceArray<>(maxComponentCount);
+			// Copy the previous Components in the new row.
+			if(row != null)
+				for(int i = 0; i < row.length(); i++)
+					extended[systemIdentifier].set(i, row.get(i));
 			logger.trace("Max number of Components for sysID '" + systemIdentifier + "' of Entity '" + this + "' (ID: " + this.id + ") set to " + maxComponentCount + ".");
 		}
 		else {
-			logger.warn("Max number of Components for sysID '" + systemIdentifier + "' not set to " + maxComponentCount + " because already bigger or equal (" + this.data[systemIdentifier].length + ").");
+			logger.warn("Max number of Components for sysID '" + systemIdentifier + "' not set to " + maxComponentCount + " because already bigger or equal (" + row.length() + ").");
 		}
+
+		this.data = extended;
+	}
+
+	/**
+	 * Helper method getting the row of a given System in an array of rows,
+	 * if it can hold a given Component.
+	 * @param rows Array of rows.
+	 * @param systemIdentifier ID of the System.
+	 * @param componentIdentifier ID of the Component within the System.
+	 * @return The row or null if it does not exist or is too short.
+	 */
+	private static AtomicReferenceArray<Component> getRow(AtomicReferenceArray<Component>[] rows, int systemIdentifier, int componentIdentifier) {
+		if(rows == null || systemIdentifier < 0 || rows.length <= systemIdentifier)
+			return null;
+		AtomicReferenceArray<Component> row = rows[systemIdentifier];
+		if(row == null || componentIdentifier < 0 || row.length() <= componentIdentifier)
+			return null;
+		return row;
+	}
+
+	/**
+	 * Helper method allocating an array of rows.
+	 * @param numSystems Number of rows.
+	 * @return The array.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static AtomicReferenceArray<Component>[] newRows(int numSystems) {
+		return (AtomicReferenceArray<Component>[]) new AtomicReferenceArray[numSystems];
+	}
+
+	/**
+	 * Gets the Archetype in which the Components of the Entity are stored.
+	 * @return The Archetype or null if the Entity is not stored.
+	 */
+	Archetype getArchetype() {
+		return archetype;
+	}
+
+	/**
+	 * Gets the row of the Entity in its Archetype.
+	 * @return The row or -1 if the Entity is not stored.
+	 */
+	int getRow() {
+		return row;
+	}
+
+	/**
+	 * Sets the Archetype in which the Components of the Entity are stored.
+	 * @param archetype The Archetype (null if the Entity is not stored).
+	 * @param row Row of the Entity in the Archetype.
+	 */
+	void setArchetype(Archetype archetype, int row) {
+		this.archetype = archetype;
+		this.row = row;
+	}
+
+	/**
+	 * Checks whether a Component with a given storage index is attached to the
+	 * Entity. No lock is acquired.
+	 * @param index Storage index of the Component type.
+	 * @return true if the bit of the index is set in the signature.
+	 */
+	protected boolean hasSignatureBit(int index) {
+		long[] words = this.signature;
+		int word = index >>> 6;
+		return word < words.length && (words[word] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Checks the signature of the Entity against a mask of required and a mask
+	 * of excluded storage indices. No lock is acquired.
+	 * @param required Storage indices that must be in the signature.
+	 * @param excluded Storage indices that must not be in the signature.
+	 * @return true if all the required and none of the excluded indices are
+	 *         in the signature.
+	 */
+	protected boolean matchesSignature(long[] required, long[] excluded) {
+		long[] words = this.signature;
+		for(int i = 0; i < required.length; i++)
+			if(required[i] != 0 && (i >= words.length || (words[i] & required[i]) != required[i]))
+				return false;
+		for(int i = 0; i < excluded.length && i < words.length; i++)
+			if((words[i] & excluded[i]) != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Sets the bit of a storage index in the signature of the Entity.
+	 * @param index Storage index of the Component type.
+	 */
+	protected void setSignatureBit(int index) {
+		long[] words;
+		long[] updated;
+		do {
+			words = this.signature;
+			updated = withBit(words.clone(), index);
+		} while(!signatureUpdater.compareAndSet(this, words, updated));
+	}
+
+	/**
+	 * Sets a bit in a signature mask.
+	 * @param mask The mask. It is modified if it is large enough.
+	 * @param index Index of the bit.
+	 * @return The mask, or an enlarged copy of it.
+	 */
+	static long[] withBit(long[] mask, int index) {
+		if((index >>> 6) >= mask.length)
+			mask = Arrays.copyOf(mask, (index >>> 6) + 1);
+		mask[index >>> 6] |= 1L << index;
+		return mask;
+	}
+
+	/**
+	 * Clears the bit of a storage index in the signature of the Entity.
+	 * @param index Storage index of the Component type.
+	 */
+	protected void clearSignatureBit(int index) {
+		long[] words;
+		long[] updated;
+		do {
+			words = this.signature;
+			if((index >>> 6) >= words.length)
+				return;
+			updated = words.clone();
+			updated[index >>> 6] &= ~(1L << index);
+		} while(!signatureUpdater.compareAndSet(this, words, updated));
 	}
 
 	/**
@@ -164,9 +436,10 @@ public class Entity implements Comparable<Entity> {
 	 * @return The number of Systems.
 	 */
 	protected int getNumberOfSystems() {
-		if(data == null)
+		AtomicReferenceArray<Component>[] rows = this.data;
+		if(rows == null)
 			return 0;
-		return data.length;
+		return rows.length;
 	}
 
 	/**
@@ -176,9 +449,10 @@ public class Entity implements Comparable<Entity> {
 	 * @return Number of Components for this System.
 	 */
 	protected int getNumberOfComponents(int system) {
-		if(data[system] == null)
+		AtomicReferenceArray<Component> row = this.data[system];
+		if(row == null)
 			return 0;
-		return data[system].length;
+		return row.length();
 	}
 
 	/**
@@ -203,12 +477,13 @@ public class Entity implements Comparable<Entity> {
 	@Override
 	public String toString() {
 		StringBuilder data = new StringBuilder("Entity:");
-		if(this.data != null)
-			for(Component c[] : this.data) {
+		AtomicReferenceArray<Component>[] rows = this.data;
+		if(rows != null)
+			for(AtomicReferenceArray<Component> c : rows) {
 				if(c != null)
-					for(Component z : c)
-						if(z != null)
-							data.append(" ").append(z.getClass().getSimpleName());
+					for(int i = 0; i < c.length(); i++)
+						if(c.get(i) != null)
+							data.append(" ").append(c.get(i).getClass().getSimpleName());
 				data.append(" |");
 			}
 
@@ -217,14 +492,8 @@ public class Entity implements Comparable<Entity> {
 
 	public JSONObject toJSONObject() {
 		JSONObject result = new JSONObject();
-		for (Component[] datum : this.data) {
-			if (datum != null) {
-				for (Component component : datum) {
-					if (component != null)
-						result.put(component.getClass().getSimpleName(), component.toJSONObject());
-				}
-			}
-		}
+		for (Component component : getComponents())
+			result.put(component.getClass().getSimpleName(), component.toJSONObject());
 
 		return result;
 	}
@@ -0,0 +1,167 @@
+package de.tum.ei.lkn.eces.core;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Strategy creating the ExecutorService on which a Controller runs the
+ * listeners.
+ *
+ * The built-in strategies are:
+ * - cachedPool(): an unbounded pool of daemon threads (default),
+ * - virtualThreads(): a new virtual thread per listener job (Java 21+),
+ * - boundedPool(): a pool with a maximum number of daemon threads, where
+ *   jobs submitted while all the threads are busy run in the submitting
+ *   thread,
+ * - inline(): jobs run in the thread closing the MapperSpace,
+ * - workStealing(): a ForkJoinPool, whose threads waiting for the listeners
+ *   of the MapperSpaces closed by listeners run these listeners themselves.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+@FunctionalInterface
+public interface ExecutionStrategy {
+	/**
+	 * Creates the ExecutorService.
+	 * @return The ExecutorService.
+	 */
+	ExecutorService createExecutorService();
+
+	/**
+	 * Strategy using an unbounded pool of daemon threads.
+	 * @return The strategy.
+	 */
+	static ExecutionStrategy cachedPool() {
+		return () -> Executors.newCachedThreadPool(daemonThreadFactory());
+	}
+
+	/**
+	 * Strategy using a new virtual thread for each listener job. If the JVM
+	 * does not support virtual threads (before Java 21), an unbounded pool
+	 * of daemon threads is used instead.
+	 * @return The strategy.
+	 */
+	static ExecutionStrategy virtualThreads() {
+		return () -> {
+			try {
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				Logger.getLogger(ExecutionStrategy.class).warn("Virtual threads are not supported by this JVM, using a cached thread pool.");
+				return Executors.newCachedThreadPool(daemonThreadFactory());
+			}
+		};
+	}
+
+	/**
+	 * Strategy using a pool of at most a given number of daemon threads.
+	 * Jobs are not queued: a job submitted while all the threads are busy is
+	 * run by the submitting thread. Hence, listeners blocking on the
+	 * closure of their own MapperSpaces cannot exhaust the pool.
+	 * @param threads Maximum number of threads.
+	 * @return The strategy.
+	 */
+	static ExecutionStrategy boundedPool(int threads) {
+		if(threads < 1)
+			throw new IllegalArgumentException("A bounded pool needs at least one thread (" + threads + " given).");
+		return () -> {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+					new SynchronousQueue<>(), daemonThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+			executor.allowCoreThreadTimeOut(true);
+			return executor;
+		};
+	}
+
+	/**
+	 * Strategy running the jobs in the submitting thread, i.e., the thread
+	 * closing the MapperSpace. Suited to tiny listeners.
+	 * @return The strategy.
+	 */
+	static ExecutionStrategy inline() {
+		return MoreExecutors::newDirectExecutorService;
+	}
+
+	/**
+	 * Strategy using a work-stealing ForkJoinPool with one thread per
+	 * available processor. See workStealing(int).
+	 * @return The strategy.
+	 */
+	static ExecutionStrategy workStealing() {
+		return workStealing(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Strategy using a work-stealing ForkJoinPool. A listener closing a
+	 * MapperSpace forks the listener jobs of the MapperSpace on the queue of
+	 * its thread and, while waiting for them, runs them or helps the threads
+	 * having stolen them. Hence, cascades of listeners do not hold one
+	 * blocked thread per level.
+	 * @param parallelism Target number of threads.
+	 * @return The strategy.
+	 */
+	static ExecutionStrategy workStealing(int parallelism) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("A work-stealing pool needs at least one thread (" + parallelism + " given).");
+		return () -> new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false);
+	}
+
+	/**
+	 * Strategy putting a bounded DispatchQueue in front of the ExecutorService
+	 * created by another strategy. The queue of a Controller can be obtained
+	 * with Controller.getDispatchQueue().
+	 * @param strategy Strategy creating the ExecutorService running the jobs.
+	 * @param capacity Maximum number of jobs queued or running at once.
+	 * @param policy Behavior of the queue when it is full.
+	 * @return The strategy.
+	 */
+	static ExecutionStrategy bounded(ExecutionStrategy strategy, int capacity, DispatchQueue.OverflowPolicy policy) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("A dispatch queue needs a capacity of at least one job (" + capacity + " given).");
+		return () -> new DispatchQueue(strategy.createExecutorService(), capacity, policy);
+	}
+
+	/**
+	 * Strategy dispatching the listener jobs through a preallocated ring
+	 * buffer of 1024 slots consumed by one worker per available processor
+	 * (see RingBufferDispatcher).
+	 * @return The strategy.
+	 */
+	static ExecutionStrategy ringBuffer() {
+		return ringBuffer(1024, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Strategy dispatching the listener jobs through a preallocated ring
+	 * buffer (see RingBufferDispatcher).
+	 * @param size Number of slots of the ring (power of two).
+	 * @param workers Number of worker threads.
+	 * @return The strategy.
+	 */
+	static ExecutionStrategy ringBuffer(int size, int workers) {
+		if(size < 1 || Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("The size of a ring buffer must be a power of two (" + size + " given).");
+		if(workers < 1)
+			throw new IllegalArgumentException("A ring buffer dispatcher needs at least one worker (" + workers + " given).");
+		return () -> new RingBufferDispatcher(size, workers);
+	}
+
+	/**
+	 * Gets a factory creating daemon threads.
+	 * @return The factory.
+	 */
+	static ThreadFactory daemonThreadFactory() {
+		return r -> {
+			Thread t = Executors.defaultThreadFactory().newThread(r);
+			t.setDaemon(true);
+			return t;
+		};
+	}
+}
@@ -13,6 +13,13 @@ public class HasComponentFilter extends Filter {
 	 */
 	private Mapper componentMapper;
 
+	/**
+	 * Whether the source Component can be looked up in the signature of the
+	 * Entity, i.e., whether its Mapper handles all the Components stored
+	 * with its storage index.
+	 */
+	private boolean inSignature;
+
 	/**
 	 * Creates a HasComponent Filter.
 	 * @param controller Controller responsible for creating a Mapper for the
@@ -21,12 +28,27 @@ public class HasComponentFilter extends Filter {
 	 */
 	public HasComponentFilter(Controller controller, Class<? extends Component> clazz) {
 		componentMapper = controller.getMapper(clazz);
+		inSignature = componentMapper.handlesStorageClass();
+	}
+
+	/**
+	 * Gets the storage index of the source Component if it can be looked up
+	 * in the signature of the Entity.
+	 * @return The storage index or -1 if the Entity must be queried through
+	 *         the Mapper.
+	 */
+	protected int getSignatureIndex() {
+		return inSignature ? componentMapper.getStorageIndex() : -1;
 	}
 
 	@Override
 	public boolean isAccepted(Component component) {
 		Entity entity = component.getEntity();
-		return (entity != null && componentMapper.isIn(entity));
+		if(entity == null)
+			return false;
+		if(inSignature)
+			return entity.hasSignatureBit(componentMapper.getStorageIndex());
+		return componentMapper.isIn(entity);
 	}
 
 	@Override
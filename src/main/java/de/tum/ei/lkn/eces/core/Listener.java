@@ -1,22 +1,49 @@
 package de.tum.ei.lkn.eces.core;
 
+import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
 import de.tum.ei.lkn.eces.core.annotations.HasComponent;
 import de.tum.ei.lkn.eces.core.annotations.HasComponents;
 import de.tum.ei.lkn.eces.core.annotations.HasNotComponent;
 import de.tum.ei.lkn.eces.core.annotations.HasNotComponents;
+import de.tum.ei.lkn.eces.core.annotations.RunsSerially;
 import de.tum.ei.lkn.eces.core.exceptions.ControllerException;
+import org.apache.log4j.Logger;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Vector;
 
 /**
  * Class representing a method listening to ComponentStatus changes.
  *
+ * The method either takes a Component, and is run once per event, or a List
+ * or Collection of Components (batch listener), and is run once per closed
+ * MapperSpace with all the Components subject to the event in the
+ * MapperSpace.
+ *
  * @author Jochen Guck
  * @author Amaury Van Bemten
  */
 class Listener {
+	/**
+	 * Logger.
+	 */
+	private final static Logger logger = Logger.getLogger(Listener.class);
+
 	/**
 	 * The method.
 	 */
@@ -27,11 +54,52 @@ class Listener {
 	 */
 	private Object object;
 
+	/**
+	 * Invoker calling the method. Generated when the listener is created.
+	 */
+	private Invoker invoker;
+
+	/**
+	 * Type of the parameter of the method or, for a batch listener, of the
+	 * elements of the parameter.
+	 */
+	private Class<?> parameterType;
+
+	/**
+	 * Whether the method takes a List of Components.
+	 */
+	private boolean batch;
+
+	/**
+	 * Whether the updates of a Component in a MapperSpace trigger the
+	 * listener only once.
+	 */
+	private boolean coalesced;
+
+	/**
+	 * Whether the listener runs on the mailbox of its System (see
+	 * RunsSerially).
+	 */
+	private boolean serial;
+
 	/**
 	 * Filters filtering Components that may trigger the listener.
 	 */
 	private Filter[] filters;
 
+	/**
+	 * Filters which cannot be evaluated on the signature of the Entity and
+	 * are therefore evaluated one by one.
+	 */
+	private Filter[] remainingFilters;
+
+	/**
+	 * Storage indices that must (respectively must not) be in the signature
+	 * of the Entity of a Component for the Listener to be run.
+	 */
+	private long[] requiredMask = new long[0];
+	private long[] excludedMask = new long[0];
+
 	/**
 	 * Controller responsible for the listener.
 	 */
@@ -48,6 +116,12 @@ class Listener {
 		this.object = object;
 		this.method = method;
 		this.controller = controller;
+		Class<?> batchType = getBatchType(method);
+		this.batch = batchType != null;
+		this.parameterType = batch ? batchType : method.getParameterTypes()[0];
+		this.serial = object.getClass().isAnnotationPresent(RunsSerially.class);
+		this.coalesced = !method.isAnnotationPresent(ComponentStateIs.class) || method.getAnnotation(ComponentStateIs.class).Coalesce();
+		this.invoker = createInvoker(method);
 
 		Vector<Filter> filters = new Vector<>();
 		// Add the possible HasComponent filters(s).
@@ -65,6 +139,20 @@ class Listener {
 				filters.add(new HasNotComponentFilter(controller, filter.component()));
 
 		this.filters = filters.toArray(new Filter[filters.size()]);
+
+		/* HasComponent and HasNotComponent filters whose source Component can
+		 * be looked up in the signature of the Entity are compiled into two
+		 * masks. */
+		Vector<Filter> remainingFilters = new Vector<>();
+		for(Filter filter : filters) {
+			if(filter instanceof HasComponentFilter && ((HasComponentFilter) filter).getSignatureIndex() >= 0)
+				requiredMask = Entity.withBit(requiredMask, ((HasComponentFilter) filter).getSignatureIndex());
+			else if(filter instanceof HasNotComponentFilter && ((HasNotComponentFilter) filter).getSignatureIndex() >= 0)
+				excludedMask = Entity.withBit(excludedMask, ((HasNotComponentFilter) filter).getSignatureIndex());
+			else
+				remainingFilters.add(filter);
+		}
+		this.remainingFilters = remainingFilters.toArray(new Filter[remainingFilters.size()]);
 	}
 
 	/**
@@ -79,12 +167,172 @@ class Listener {
 			if(filter(component)) {
 				component.getLock().readLock().lock();
 				controller.getMapperData().addReadLock(component.getLock().readLock());
-				method.invoke(object, component);
+				if(!parameterType.isInstance(component))
+					throw new IllegalArgumentException("Listener " + method + " cannot be run with a " + component.getClass().getName() + ".");
+				try {
+					invoker.invoke(object, component);
+				} catch (InvocationTargetException e) {
+					throw new ControllerException("Impossible to run listener ("+ method.toString() + "; "+ component.getClass().getName() +"):\n", e.getCause());
+				} catch (Throwable e) {
+					throw new ControllerException("Impossible to run listener ("+ method.toString() + "; "+ component.getClass().getName() +"):\n", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the batch Listener.
+	 * The Listener is run once with all the Components of the given list that
+	 * are of the type of the Listener and accepted by all its filters, if
+	 * there is at least one. If run, the Listener is run in a MapperSpace.
+	 * A read lock is acquired for each Component, by increasing lock number.
+	 * @param components Components subject to the event.
+	 */
+	public void runBatchTask(List<Component> components) {
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			List<Component> accepted = new ArrayList<>();
+			for(Component component : components)
+				if(parameterType.isInstance(component) && filter(component))
+					accepted.add(component);
+			if(accepted.isEmpty())
+				return;
+
+			/* Locks are acquired by increasing lock number: readers wait
+			 * behind queued writers, so that two batches locking common
+			 * Components in different orders could deadlock. */
+			List<Component> lockOrder = new ArrayList<>(accepted);
+			lockOrder.sort(Comparator.comparingLong(Component::getLockOrder));
+			for(Component component : lockOrder) {
+				component.getLock().readLock().lock();
+				controller.getMapperData().addReadLock(component.getLock().readLock());
+			}
+			try {
+				invoker.invoke(object, Collections.unmodifiableList(accepted));
+			} catch (InvocationTargetException e) {
+				throw new ControllerException("Impossible to run listener ("+ method.toString() + "; "+ accepted.size() +" Components):\n", e.getCause());
+			} catch (Throwable e) {
+				throw new ControllerException("Impossible to run listener ("+ method.toString() + "; "+ accepted.size() +" Components):\n", e);
+			}
+		}
+	}
+
+	/**
+	 * Tells whether the Listener is a batch listener.
+	 * @return true if the method takes a List of Components.
+	 */
+	public boolean isBatch() {
+		return batch;
+	}
+
+	/**
+	 * Gets the Object on which the method is run, i.e., the System.
+	 * @return The Object.
+	 */
+	public Object getObject() {
+		return object;
+	}
+
+	/**
+	 * Tells whether the updates of a Component in a MapperSpace trigger the
+	 * Listener only once.
+	 * @return true if updates are coalesced.
+	 */
+	public boolean isCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * Tells whether the Listener runs on the mailbox of its System.
+	 * @return true if the System of the Listener runs its listeners serially.
+	 */
+	public boolean isSerial() {
+		return serial;
+	}
+
+	/**
+	 * Gets the type of the Components to which the Listener listens.
+	 * @return The type.
+	 */
+	public Class<?> getComponentType() {
+		return parameterType;
+	}
+
+	/**
+	 * Gets the type of the elements of the parameter of a batch listener
+	 * method, i.e., of a method taking a List or a Collection of Components.
+	 * @param method The method.
+	 * @return The type of the elements, or null if the method does not take a
+	 *         List or a Collection of a Component type.
+	 */
+	static Class<?> getBatchType(Method method) {
+		if(method.getParameterTypes().length != 1)
+			return null;
+		Class<?> rawType = method.getParameterTypes()[0];
+		Type genericType = method.getGenericParameterTypes()[0];
+		if((rawType != List.class && rawType != Collection.class) || !(genericType instanceof ParameterizedType))
+			return null;
+
+		Type elementType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+		if(elementType instanceof WildcardType)
+			elementType = ((WildcardType) elementType).getUpperBounds()[0];
+		if(elementType instanceof Class && Component.class.isAssignableFrom((Class<?>) elementType))
+			return (Class<?>) elementType;
+		return null;
+	}
+
+	/**
+	 * Creates an invoker for a listener method. The invoker is, by order of
+	 * preference:
+	 * - a class generated by the LambdaMetafactory and calling the method
+	 *   directly,
+	 * - a MethodHandle to the method,
+	 * - the method itself, called by reflection.
+	 * @param method The method.
+	 * @return The invoker.
+	 */
+	static Invoker createInvoker(Method method) {
+		Class<?> declaringClass = method.getDeclaringClass();
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			if(isAccessible(declaringClass)) {
+				MethodHandle handle = lookup.unreflect(method);
+				MethodType invokedType = MethodType.methodType(void.class, declaringClass, method.getParameterTypes()[0]);
+				CallSite site = LambdaMetafactory.metafactory(lookup, "invoke", MethodType.methodType(Invoker.class),
+						MethodType.methodType(void.class, Object.class, Object.class), handle, invokedType);
+				return (Invoker) site.getTarget().invoke();
 			}
-		}catch (IllegalAccessException e) {
-			throw new ControllerException("Impossible to run listener ("+ method.toString() + "; "+ component.getClass().getName() +"):\n", e.getCause());
-		} catch (InvocationTargetException e) {
-			throw new ControllerException("Impossible to run listener ("+ method.toString() + "; "+ component.getClass().getName() +"):\n",e.getCause());
+		} catch (Throwable e) {
+			logger.debug("Impossible to generate an invoker for " + method + ", using a MethodHandle.", e);
+		}
+
+		try {
+			method.setAccessible(true);
+			MethodHandle handle = lookup.unreflect(method).asType(MethodType.methodType(void.class, Object.class, Object.class));
+			return (object, argument) -> {
+				handle.invokeExact(object, argument);
+			};
+		} catch (RuntimeException | IllegalAccessException e) {
+			logger.debug("Impossible to get a MethodHandle for " + method + ", using reflection.", e);
+		}
+
+		return method::invoke;
+	}
+
+	/**
+	 * Helper method checking whether a generated class can call the methods of
+	 * a given class: the class and its enclosing classes must be public and
+	 * visible from the class loader of the Listener.
+	 * @param clazz The class.
+	 * @return true if the class is accessible.
+	 */
+	private static boolean isAccessible(Class<?> clazz) {
+		for(Class<?> c = clazz; c != null; c = c.getEnclosingClass())
+			if(!Modifier.isPublic(c.getModifiers()))
+				return false;
+		try {
+			return Class.forName(clazz.getName(), false, Listener.class.getClassLoader()) == clazz;
+		} catch (ClassNotFoundException e) {
+			return false;
 		}
 	}
 
@@ -96,7 +344,17 @@ class Listener {
 	 *         otherwise.
 	 */
 	private boolean filter(Component component) {
-		for(Filter filter : filters) {
+		if(requiredMask.length > 0 || excludedMask.length > 0) {
+			Entity entity = component.getEntity();
+			if(entity == null) {
+				if(requiredMask.length > 0)
+					return false;
+			} else if(!entity.matchesSignature(requiredMask, excludedMask)) {
+				return false;
+			}
+		}
+
+		for(Filter filter : remainingFilters) {
 			if(!filter.isAccepted(component)) {
 				return false;
 			}
@@ -114,4 +372,19 @@ class Listener {
 
 		return object.getClass().getName() + " - " + method.getName() + "- " + result;
 	}
+
+	/**
+	 * Interface of the objects calling a listener method.
+	 */
+	@FunctionalInterface
+	interface Invoker {
+		/**
+		 * Calls the method.
+		 * @param object Object on which the method is called.
+		 * @param argument Component (or List of Components) given as
+		 *                 parameter.
+		 * @throws Throwable any exception thrown by the method.
+		 */
+		void invoke(Object object, Object argument) throws Throwable;
+	}
 }
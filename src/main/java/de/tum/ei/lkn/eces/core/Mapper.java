@@ -6,6 +6,11 @@ import org.apache.log4j.Logger;
 import org.json.JSONObject;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Class representing a Mapper for a given Component type.
@@ -36,11 +41,30 @@ public class Mapper<C extends Component> {
 	private int systemIdentifier;
 	private int componentIdentifier;
 
+	/**
+	 * Storage index of the Component class handled by the Mapper in the
+	 * ArchetypeStorage of the Controller.
+	 */
+	private int storageIndex;
+
+	/**
+	 * Sparse set storing the Components handled by the Mapper or null if
+	 * they are stored in the ArchetypeStorage of the Controller.
+	 */
+	private SparseSet sparseSet;
+
 	/**
 	 * Controller responsible for handling the Mapper.
 	 */
 	private Controller controller;
 
+	/**
+	 * Number of chunks per thread of the pool into which the Components are
+	 * split by parallelForEach(). More chunks than threads allow to balance
+	 * Components whose processing time differs.
+	 */
+	private final static int PARALLEL_CHUNKS_PER_THREAD = 4;
+
 	/**
 	 * Creates a new Mapper.
 	 * @param controller Controller handling the Mapper.
@@ -49,9 +73,21 @@ public class Mapper<C extends Component> {
 	 * @param componentClassType Component class handled by the mapper.
 	 */
 	protected Mapper(Controller controller, int systemIdentifier, int componentIdentifier, Class<C> componentClassType) {
+		this(controller, systemIdentifier, componentIdentifier, controller.getStorageIndex(systemIdentifier, componentIdentifier), componentClassType);
+	}
+
+	/**
+	 * Creates a new Mapper.
+	 * @param controller Controller handling the Mapper.
+	 * @param systemIdentifier System ID of the Component class handled by the mapper.
+	 * @param componentIdentifier Component ID of the Component class handled by the mapper.
+	 * @param storageIndex Storage index of the Component class handled by the mapper.
+	 * @param componentClassType Component class handled by the mapper.
+	 */
+	protected Mapper(Controller controller, int systemIdentifier, int componentIdentifier, int storageIndex, Class<C> componentClassType) {
 		super();
 		this.controller = controller;
-		this.setIdentifiers(systemIdentifier, componentIdentifier);
+		this.setIdentifiers(systemIdentifier, componentIdentifier, storageIndex);
 		this.componentClassType = componentClassType;
 	}
 
@@ -65,7 +101,7 @@ public class Mapper<C extends Component> {
 			this.controller = controller;
 			componentClassType = this.getTypeClass();
 			Mapper<C> mapper = controller.getMapper(componentClassType);
-			this.setIdentifiers(mapper.systemIdentifier, mapper.componentIdentifier);
+			this.setIdentifiers(mapper.systemIdentifier, mapper.componentIdentifier, mapper.storageIndex);
 	}
 
 	/**
@@ -86,10 +122,13 @@ public class Mapper<C extends Component> {
 	 * Sets the system and components identifiers.
 	 * @param systemIdentifier System IDs.
 	 * @param componentIdentifier Component IDs.
+	 * @param storageIndex Storage index.
 	 */
-	private void setIdentifiers(int systemIdentifier, int componentIdentifier) {
+	private void setIdentifiers(int systemIdentifier, int componentIdentifier, int storageIndex) {
 		this.systemIdentifier = systemIdentifier;
 		this.componentIdentifier = componentIdentifier;
+		this.storageIndex = storageIndex;
+		this.sparseSet = controller.getSparseSet(storageIndex);
 	}
 
 	/**
@@ -112,6 +151,7 @@ public class Mapper<C extends Component> {
 	@SuppressWarnings("unchecked")
 	public C get(Entity entity) {
 		try(MapperSpace ms = controller.startMapperSpace()) {
+			// Read from the Entity, not from its Archetype (see ArchetypeStorage).
 			Component c = entity.getComponent(systemIdentifier, componentIdentifier);
 			if(c == null)
 				return null;
@@ -137,15 +177,19 @@ public class Mapper<C extends Component> {
 	public C getWait(Entity entity) {
 		try(MapperSpace ms = controller.startMapperSpace()) {
 			try {
+				C c;
 				synchronized(entity) {
-					C c = (C) entity.getComponent(systemIdentifier, componentIdentifier);
+					c = (C) entity.getComponent(systemIdentifier, componentIdentifier);
 					while(c == null) {
 						entity.wait();
 						c = (C) entity.getComponent(systemIdentifier, componentIdentifier);
 					}
-					this.acquireReadLock(c);
-					return c;
 				}
+				/* The read lock is acquired outside of the monitor of the
+				 * Entity: the attachment job holds the write lock of the
+				 * Component while storing it, which needs the monitor. */
+				this.acquireReadLock(c);
+				return c;
 			} catch(InterruptedException e) {
 				throw new MapperException("Interrupted while waiting to get Component of an Entity: " + e);
 			}
@@ -181,9 +225,10 @@ public class Mapper<C extends Component> {
 	 * @return true/false based on result.
 	 */
 	public boolean isIn(Component component) {
-		if(component.getEntity() == null)
+		Entity entity = component.getEntity();
+		if(entity == null)
 			return false;
-		return isIn(component.getEntity());
+		return isIn(entity);
 	}
 
 	/**
@@ -196,17 +241,123 @@ public class Mapper<C extends Component> {
 	 */
 	public boolean isIn(Entity entity) {
 		try(MapperSpace ms = controller.startMapperSpace()) {
-			if(entity.hasComponent(systemIdentifier, componentIdentifier)) {
-				Component c = entity.getComponent(systemIdentifier, componentIdentifier);
-				if(!this.componentClassType.isInstance(c))
-					return false;
-				this.acquireReadLock(c);
-				return true;
+			Component c = entity.getComponent(systemIdentifier, componentIdentifier);
+			if(!this.componentClassType.isInstance(c))
+				return false;
+			this.acquireReadLock(c);
+			return true;
+		}
+	}
+
+	/**
+	 * Runs an action on all the Components for which the Mapper is
+	 * responsible and which are currently attached to an Entity.
+	 * Only the Entities carrying such a Component are visited. The set of
+	 * visited Components is a snapshot taken when the method is called.
+	 * A read lock is acquired for each Component and the operation is executed
+	 * in a MapperSpace (if not already done by the user of the method).
+	 * @param action Action to run on each Component.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(Consumer<? super C> action) {
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			for(Component c : this.getStoredComponents()) {
+				if(this.componentClassType.isInstance(c)) {
+					this.acquireReadLock(c);
+					action.accept((C) c);
+				}
 			}
-			return false;
 		}
 	}
 
+	/**
+	 * Runs in parallel an action on all the Components for which the Mapper is
+	 * responsible and which are currently attached to an Entity.
+	 * The set of visited Components is a snapshot taken when the method is
+	 * called. It is split into chunks processed by the ForkJoinPool of the
+	 * Controller. Each chunk is processed in its own MapperSpace (unless it
+	 * runs in the calling thread while it is already in a MapperSpace) and a
+	 * read lock is acquired for each Component. The modifications done by the
+	 * action in a chunk are therefore executed when the chunk is finished.
+	 * The method returns when all the Components have been visited. It should
+	 * not be called while the calling thread holds read locks on Components
+	 * that the action modifies, as the chunks would wait for these locks.
+	 * @param action Action to run on each Component.
+	 */
+	public void parallelForEach(Consumer<? super C> action) {
+		Component[] components = this.getStoredComponents().stream()
+				.filter(this.componentClassType::isInstance)
+				.toArray(Component[]::new);
+		ForkJoinPool pool = controller.getForkJoinPool();
+		int chunkSize = Math.max(1, components.length / (pool.getParallelism() * PARALLEL_CHUNKS_PER_THREAD));
+		pool.invoke(new ParallelForEachTask(components, 0, components.length, chunkSize, action));
+	}
+
+	/**
+	 * Gets a Stream of all the Components for which the Mapper is responsible
+	 * and which are currently attached to an Entity.
+	 * The Stream is built on a snapshot taken when the method is called.
+	 * No read lock is acquired for the Components and the operation is not
+	 * executed in a MapperSpace.
+	 * @return the Stream.
+	 */
+	public Stream<C> stream() {
+		return this.getStoredComponents().stream()
+				.filter(this.componentClassType::isInstance)
+				.map(this.componentClassType::cast);
+	}
+
+	/**
+	 * Gets the number of Components for which the Mapper is responsible and
+	 * which are currently attached to an Entity.
+	 * @return number of Components.
+	 */
+	public int count() {
+		if(this.handlesStorageClass())
+			return sparseSet != null ? sparseSet.size() : controller.getArchetypeStorage().count(storageIndex);
+		return (int) this.stream().count();
+	}
+
+	/**
+	 * Gets the storage index of the Component class handled by the Mapper.
+	 * @return the storage index.
+	 */
+	protected int getStorageIndex() {
+		return this.storageIndex;
+	}
+
+	/**
+	 * Gets the sparse set storing the Components handled by the Mapper.
+	 * @return the sparse set or null if the Components are stored in the
+	 *         ArchetypeStorage of the Controller.
+	 */
+	protected SparseSet getSparseSet() {
+		return this.sparseSet;
+	}
+
+	/**
+	 * Checks whether the Mapper handles the class which owns the
+	 * System/Component IDs of the Mapper (and not one of its subclasses). In
+	 * that case, any Component stored with the storage index of the Mapper is
+	 * handled by the Mapper.
+	 * @return true if the class handled by the Mapper owns its IDs.
+	 */
+	protected boolean handlesStorageClass() {
+		return controller.getComponentClass(systemIdentifier, componentIdentifier) == this.componentClassType;
+	}
+
+	/**
+	 * Helper method getting a snapshot of all the stored Components of the
+	 * System/Component pair handled by the Mapper.
+	 * @return List of Components (possibly of subclasses of other types than
+	 *         the one handled by the Mapper).
+	 */
+	private List<Component> getStoredComponents() {
+		if(sparseSet != null)
+			return sparseSet.getComponents();
+		return controller.getArchetypeStorage().getComponents(storageIndex);
+	}
+
 	/**
 	 * Attaches a Component to an Entity.
 	 * The operation is executed in a MapperSpace.
@@ -228,17 +379,24 @@ public class Mapper<C extends Component> {
 	private void attachComponentPrivate(Entity entity, Component component) {
 		if(component.getClass() == this.componentClassType) {
 			try (MapperSpace ms = controller.startMapperSpace()) {
+				if(controller.getMapperData().isDestroyedEntity(entity))
+					throw new MapperException("Could not attach Component " + component.getClass().getName() + " because Entity " + entity.getId() + " (generation " + entity.getGeneration() + ") is destroyed in this MapperSpace.");
 				controller.getMapperData().addEntityAttachmentJob(()->{
 					component.getLock().writeLock().lock();
-					attachComponentOptimistic(entity, component);
-					component.getLock().writeLock().unlock();
+					try {
+						attachComponentOptimistic(entity, component);
+					} finally {
+						component.getLock().writeLock().unlock();
+					}
 					return true;
 				});
 				logger.trace("Entity attachment job added (" + component + " to " + entity + ").");
 
 				/* Finally, the listeners job list consists in asking the
-				 * Controller to execute all the listener jobs. */
-				controller.getMapperData().addAttachmentListener(()->controller.runAttachmentListeners(component));
+				 * Controller to execute all the listener jobs (if any). */
+				if(controller.hasListeners(component, ComponentStatus.New))
+					controller.getMapperData().addAttachmentListener(()->controller.runAttachmentListeners(component));
+				controller.getMapperData().addChangedComponent(ComponentStatus.New, component);
 			}
 		} else {
 			logger.trace("Component (" + component + ") attachment task delegated by " + this.componentClassType + " Mapper to " + component.getClass() + " Mapper.");
@@ -276,15 +434,20 @@ public class Mapper<C extends Component> {
 					if(entity == null)
 						return false;
 					newComponent.getLock().writeLock().lock();
-					attachComponentOptimistic(entity, newComponent);
-					newComponent.getLock().writeLock().unlock();
+					try {
+						attachComponentOptimistic(entity, newComponent);
+					} finally {
+						newComponent.getLock().writeLock().unlock();
+					}
 					return true;
 				});
 				logger.trace("Component attachment job added (" + newComponent + " to " + component + "'s Entity).");
 
 				/* Finally, the listeners job list consists in asking the
-				 * Controller to execute all the listener jobs. */
-				controller.getMapperData().addAttachmentListener(()->controller.runAttachmentListeners(newComponent));
+				 * Controller to execute all the listener jobs (if any). */
+				if(controller.hasListeners(newComponent, ComponentStatus.New))
+					controller.getMapperData().addAttachmentListener(()->controller.runAttachmentListeners(newComponent));
+				controller.getMapperData().addChangedComponent(ComponentStatus.New, newComponent);
 			}
 		}
 		else {
@@ -300,25 +463,29 @@ public class Mapper<C extends Component> {
 	 * @param entity The Entity to which the Component should be attached.
 	 * @param component Component to attach.
 	 * @throws MapperException if such a Component type is already present on
-	 *                         this Entity.
+	 *                         this Entity or if the Entity has been destroyed.
 	 */
 	protected void attachComponentOptimistic(Entity entity, Component component) {
-		/* Add the Component at all the System/Component pairs handled by
-		 * the Mapper. */
-		try {
-			if(!entity.hasComponent(systemIdentifier, componentIdentifier))
-				entity.setComponent(component, systemIdentifier, componentIdentifier);
-			else
-				throw new MapperException("Could not attach Component " + component.getClass().getName() + " because Component " + entity.getComponent(systemIdentifier, componentIdentifier).getClass().getName() + " is already there.");
-		} catch (ArrayIndexOutOfBoundsException | NullPointerException e) {
-				/* Extend the Entity data structure if a pair is out of the
-				 * bounds of the Entity. */
+		if(entity.isDestroyed())
+			throw new MapperException("Could not attach Component " + component.getClass().getName() + " because Entity " + entity.getId() + " (generation " + entity.getGeneration() + ") has been destroyed.");
+
+		/* Extend the Entity data structure if the System/Component pair
+		 * handled by the Mapper is out of the bounds of the Entity. This never
+		 * happens for Entities created by a sealed Controller. */
+		if(!entity.canHold(systemIdentifier, componentIdentifier))
 			entity.extend(systemIdentifier, controller.getNumberOfSystems(), controller.getMaximumComponentCount(systemIdentifier));
-			if(!entity.hasComponent(systemIdentifier, componentIdentifier))
-				entity.setComponent(component, systemIdentifier, componentIdentifier);
-			else
-				throw new MapperException("Could not attach Component " + component.getClass().getName() + " because Component " + entity.getComponent(systemIdentifier, componentIdentifier).getClass().getName() + " is already there.");
-		}
+
+		if(!entity.hasComponent(systemIdentifier, componentIdentifier))
+			entity.setComponent(component, systemIdentifier, componentIdentifier);
+		else
+			throw new MapperException("Could not attach Component " + component.getClass().getName() + " because Component " + entity.getComponent(systemIdentifier, componentIdentifier).getClass().getName() + " is already there.");
+
+		if(sparseSet != null)
+			sparseSet.add(entity, component);
+		else
+			controller.getArchetypeStorage().add(entity, storageIndex, component);
+		entity.setSignatureBit(storageIndex);
+		controller.entityModified(entity);
 		logger.trace("Component '" + component + "' attached to Entity '" + entity + "' (ID: " + entity.getId() + ").");
 	}
 
@@ -336,15 +503,8 @@ public class Mapper<C extends Component> {
 			if(this.isIn(entity)) {
 				C comp = this.get(entity);
 				if(comp.getClass() == this.componentClassType) {
-					/* The listener job list consists in asking the Controller
-				     * to execute all the listeners jobs. */
-					controller.getMapperData().addDetachmentListener(()->controller.runDetachmentListeners(comp));
-
-					controller.getMapperData().addEntityDetachmentJob(()->{
-						comp.getLock().writeLock().lock();
-						entity.removeComponent(systemIdentifier, componentIdentifier);
-						comp.getLock().writeLock().unlock();
-					});
+					addDetachmentListeners(comp);
+					controller.getMapperData().addEntityDetachmentJob(()->removeComponent(entity, comp));
 					logger.trace("Component detachment job (" + comp + " from " + entity + ") added.");
 					return comp;
 				}
@@ -360,6 +520,52 @@ public class Mapper<C extends Component> {
 		}
 	}
 
+	/**
+	 * Detaches a Component of the class handled by the Mapper from an Entity
+	 * while the jobs of a MapperSpace are being run (see
+	 * Controller.destroyEntity()). The detachment listeners are run with the
+	 * other listeners of the MapperSpace.
+	 * @param entity The Entity.
+	 * @param component The Component.
+	 */
+	protected void detachComponentNow(Entity entity, Component component) {
+		addDetachmentListeners(component);
+		removeComponent(entity, component);
+	}
+
+	/**
+	 * Helper method adding to the MapperSpace the detachment listeners of a
+	 * Component.
+	 * @param component The Component.
+	 */
+	private void addDetachmentListeners(Component component) {
+		/* The listener job list consists in asking the Controller
+		 * to execute all the listeners jobs (if any). */
+		if(controller.hasListeners(component, ComponentStatus.Destroyed))
+			controller.getMapperData().addDetachmentListener(()->controller.runDetachmentListeners(component));
+		controller.getMapperData().addChangedComponent(ComponentStatus.Destroyed, component);
+	}
+
+	/**
+	 * Helper method removing a Component from an Entity and from the storage.
+	 * @param entity The Entity.
+	 * @param component The Component.
+	 */
+	private void removeComponent(Entity entity, Component component) {
+		component.getLock().writeLock().lock();
+		try {
+			entity.removeComponent(systemIdentifier, componentIdentifier);
+			entity.clearSignatureBit(storageIndex);
+			if(sparseSet != null)
+				sparseSet.remove(entity);
+			else
+				controller.getArchetypeStorage().remove(entity, storageIndex);
+		} finally {
+			component.getLock().writeLock().unlock();
+		}
+		controller.entityModified(entity);
+	}
+
 	/**
 	 * Detaches from the Entity of a Component the Component for which the
 	 * Mapper is responsible.
@@ -382,8 +588,20 @@ public class Mapper<C extends Component> {
 	public void updateComponent(Component component, Runnable run) {
 		try(MapperSpace ms = controller.startMapperSpace()) {
 			logger.trace("Component update job ("+ run + " on " + component + ") added.");
-			controller.getMapperData().addComponentUpdateJob(component, run);
-			controller.getMapperData().addUpdateListener(()->controller.runUpdateListeners(component));
+			MapperData data = controller.getMapperData();
+			/* Updates of a Component are coalesced: the listener job is
+			 * added with the first update and is given, when run, the number
+			 * of updates. It is dropped if the Component is detached in the
+			 * MapperSpace. No job is added if the Component has no update
+			 * listener. */
+			if(data.getUpdateCount(component) == 0 && controller.hasListeners(component, ComponentStatus.Updated)) {
+				data.addUpdateListener(()->{
+					if(!data.isDetached(component))
+						controller.runUpdateListeners(component, data.getUpdateCount(component));
+				});
+			}
+			data.addComponentUpdateJob(component, run);
+			data.addChangedComponent(ComponentStatus.Updated, component);
 		}
 	}
 
@@ -430,5 +648,61 @@ public class Mapper<C extends Component> {
 	public synchronized JSONObject createJSONObject(Entity entity) {
 		return JSONUtil.createJSONObject(controller,entity);
 	}
-}
 
+	/**
+	 * Task running an action on a range of Components, splitting the range
+	 * until it is small enough.
+	 */
+	private class ParallelForEachTask extends RecursiveAction {
+		private static final long serialVersionUID = 3913533029680219604L;
+
+		/**
+		 * Components to visit, range [from, to) and maximum number of
+		 * Components visited without splitting.
+		 */
+		private final Component[] components;
+		private final int from;
+		private final int to;
+		private final int chunkSize;
+
+		/**
+		 * Action to run on each Component.
+		 */
+		private final Consumer<? super C> action;
+
+		/**
+		 * Creates a task.
+		 * @param components Components to visit.
+		 * @param from First index of the range (included).
+		 * @param to Last index of the range (excluded).
+		 * @param chunkSize Maximum number of Components visited without
+		 *                  splitting.
+		 * @param action Action to run on each Component.
+		 */
+		ParallelForEachTask(Component[] components, int from, int to, int chunkSize, Consumer<? super C> action) {
+			this.components = components;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+			this.action = action;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected void compute() {
+			if(to - from > chunkSize) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ParallelForEachTask(components, from, middle, chunkSize, action),
+						new ParallelForEachTask(components, middle, to, chunkSize, action));
+				return;
+			}
+
+			try(MapperSpace ms = controller.startMapperSpace()) {
+				for(int i = from; i < to; i++) {
+					acquireReadLock(components[i]);
+					action.accept((C) components[i]);
+				}
+			}
+		}
+	}
+}
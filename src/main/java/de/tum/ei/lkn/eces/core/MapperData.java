@@ -1,8 +1,15 @@
 package de.tum.ei.lkn.eces.core;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
@@ -53,12 +60,81 @@ public class MapperData {
 	 */
 	private List<Runnable> detachmentListeners = new LinkedList<>();
 
+	/**
+	 * Components attached, updated and detached in the MapperSpace, per
+	 * event. They are given to the batch listeners. Only recorded if
+	 * recordChangedComponents is true.
+	 */
+	private Map<ComponentStatus, List<Component>> changedComponents = new EnumMap<>(ComponentStatus.class);
+
+	/**
+	 * Components detached in the MapperSpace, whose updates must not trigger
+	 * any listener.
+	 */
+	private Set<Component> detachedComponents = new HashSet<>();
+
+	/**
+	 * Components subject to each event, when the events of several
+	 * MapperSpaces are accumulated (see addChangedComponentOnce()).
+	 */
+	private Map<ComponentStatus, Set<Component>> distinctChangedComponents = new EnumMap<>(ComponentStatus.class);
+
+	/**
+	 * Number of updates of the Components which are not backed by an update
+	 * job, when the events of several MapperSpaces are accumulated.
+	 */
+	private Map<Component, Integer> accumulatedUpdateCounts = new HashMap<>();
+
+	/**
+	 * Entities modified by the jobs of the MapperSpace, whose membership to
+	 * the Views of the Controller has to be checked again.
+	 */
+	private Set<Entity> modifiedEntities = new LinkedHashSet<>();
+
+	/**
+	 * Entities destroyed in the MapperSpace (null until one is).
+	 */
+	private Set<Entity> destroyedEntities = null;
+
 	/**
 	 * Tells whether the MapperSpace is currently in write phase or not. A write
 	 * phase means we have acquired a write lock on an Object.
 	 */
 	private boolean writePhase = false;
 
+	/**
+	 * Whether the Components subject to each event are recorded in
+	 * changedComponents. Detachments are always recorded in
+	 * detachedComponents.
+	 */
+	private final boolean recordChangedComponents;
+
+	/**
+	 * Creates the data of a MapperSpace recording the Components subject to
+	 * each event.
+	 */
+	public MapperData() {
+		this(true);
+	}
+
+	/**
+	 * Creates the data of a MapperSpace.
+	 * @param recordChangedComponents Whether the Components subject to each
+	 *                                event must be recorded (see
+	 *                                getChangedComponents()).
+	 */
+	public MapperData(boolean recordChangedComponents) {
+		this.recordChangedComponents = recordChangedComponents;
+	}
+
+	/**
+	 * Tells whether the Components subject to each event are recorded.
+	 * @return true if they are recorded.
+	 */
+	protected boolean isRecordingChangedComponents() {
+		return this.recordChangedComponents;
+	}
+
 	/**
 	 * Gets the list of read locks.
 	 * @return List of ReadLock.
@@ -82,6 +158,42 @@ public class MapperData {
 		this.readLocks.clear();
 	}
 
+	/**
+	 * Gets the Entities modified by the jobs of the MapperSpace.
+	 * @return Set of Entities.
+	 */
+	protected Set<Entity> getModifiedEntities() {
+		return this.modifiedEntities;
+	}
+
+	/**
+	 * Adds an Entity to the Entities modified by the jobs of the MapperSpace.
+	 * @param entity The Entity.
+	 */
+	protected void addModifiedEntity(Entity entity) {
+		this.modifiedEntities.add(entity);
+	}
+
+	/**
+	 * Adds an Entity to the Entities destroyed in the MapperSpace.
+	 * @param entity The Entity.
+	 * @return false if the Entity is already destroyed in the MapperSpace.
+	 */
+	protected boolean addDestroyedEntity(Entity entity) {
+		if(this.destroyedEntities == null)
+			this.destroyedEntities = new HashSet<>();
+		return this.destroyedEntities.add(entity);
+	}
+
+	/**
+	 * Tells whether an Entity is destroyed in the MapperSpace.
+	 * @param entity The Entity.
+	 * @return true if the Entity is destroyed in the MapperSpace.
+	 */
+	protected boolean isDestroyedEntity(Entity entity) {
+		return this.destroyedEntities != null && this.destroyedEntities.contains(entity);
+	}
+
 	/**
 	 * Gets the list of Entity attachment jobs.
 	 * @return List of attachment jobs.
@@ -180,6 +292,75 @@ public class MapperData {
 		this.detachmentListeners.add(job);
 	}
 
+	/**
+	 * Gets the Components subject to a given event in the MapperSpace.
+	 * @param status The event.
+	 * @return List of Components, in the order of the events.
+	 */
+	protected List<Component> getChangedComponents(ComponentStatus status) {
+		List<Component> components = this.changedComponents.get(status);
+		return components == null ? Collections.emptyList() : components;
+	}
+
+	/**
+	 * Adds a Component to the Components subject to a given event (nothing
+	 * is recorded, apart from detachments, if the Components subject to each
+	 * event are not recorded).
+	 * @param status The event.
+	 * @param component The Component.
+	 */
+	protected void addChangedComponent(ComponentStatus status, Component component) {
+		if(status == ComponentStatus.Destroyed)
+			this.detachedComponents.add(component);
+		if(this.recordChangedComponents)
+			this.changedComponents.computeIfAbsent(status, k -> new ArrayList<>()).add(component);
+	}
+
+	/**
+	 * Adds a Component to the Components subject to a given event, unless it
+	 * has already been added with this method. Used to accumulate the events
+	 * of several MapperSpaces.
+	 * @param status The event.
+	 * @param component The Component.
+	 * @return true if the Component has been added.
+	 */
+	protected boolean addChangedComponentOnce(ComponentStatus status, Component component) {
+		if(!this.distinctChangedComponents.computeIfAbsent(status, k -> new HashSet<>()).add(component))
+			return false;
+		addChangedComponent(status, component);
+		return true;
+	}
+
+	/**
+	 * Adds updates of a Component that happened in another MapperSpace.
+	 * @param component The Component.
+	 * @param count Number of updates.
+	 */
+	protected void addUpdateCount(Component component, int count) {
+		this.accumulatedUpdateCounts.merge(component, count, Integer::sum);
+	}
+
+	/**
+	 * Tells whether a Component is detached in the MapperSpace.
+	 * @param component The Component.
+	 * @return true if the Component is detached.
+	 */
+	protected boolean isDetached(Component component) {
+		return this.detachedComponents.contains(component);
+	}
+
+	/**
+	 * Gets the number of updates of a Component in the MapperSpace.
+	 * @param component The Component.
+	 * @return Number of update jobs of the Component, plus the updates added
+	 *         with addUpdateCount().
+	 */
+	protected int getUpdateCount(Component component) {
+		List<Runnable> jobs = this.componentUpdateJobs.get(component);
+		int count = jobs == null ? 0 : jobs.size();
+		return accumulatedUpdateCounts.isEmpty() ? count : count + accumulatedUpdateCounts.getOrDefault(component, 0);
+	}
+
 	/**
 	 * Tells whether we are currently in a write phase or not.
 	 * @return true if we are in a write phase, false otherwise.
@@ -1,5 +1,7 @@
 package de.tum.ei.lkn.eces.core;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Class representing a MapperSpace.
  * A MapperSpace is a environment in which a Mapper can be used to modify
@@ -28,4 +30,18 @@ public interface MapperSpace extends AutoCloseable {
 	 */
 	@Override
 	void close();
+
+	/**
+	 * Closes the MapperSpace without waiting for the listeners.
+	 * The jobs are executed and the read locks released before the method
+	 * returns, so that a new MapperSpace can be started right away. The
+	 * listeners are then run in the same order as with close().
+	 * By default, the MapperSpace is closed synchronously.
+	 * @return Future completed once all the listeners have run, or
+	 *         exceptionally with the first exception thrown by a listener.
+	 */
+	default CompletableFuture<Void> closeAsync() {
+		close();
+		return CompletableFuture.completedFuture(null);
+	}
 }
\ No newline at end of file
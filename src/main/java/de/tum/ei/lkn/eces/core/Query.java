@@ -0,0 +1,150 @@
+package de.tum.ei.lkn.eces.core;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A Query visits all the Entities carrying a Component of each of some given
+ * classes and no Component of some other classes.
+ *
+ * The iteration is driven by the smallest set of candidate Entities: either
+ * the Entities of the Archetypes carrying all the queried classes, or the
+ * Entities of the smallest sparse set of a queried class. Each candidate is
+ * then checked against the signature of the Entity.
+ *
+ * The typed Queries are Query1, Query2 and Query3 and are obtained with
+ * Controller.query().
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public abstract class Query {
+	/**
+	 * Logger.
+	 */
+	private final static Logger logger = Logger.getLogger(Query.class);
+
+	/**
+	 * Controller on which the Query runs.
+	 */
+	private Controller controller;
+
+	/**
+	 * Mappers of the classes whose Components are given to the action.
+	 */
+	private Mapper<?>[] included;
+
+	/**
+	 * Mappers of the classes that the visited Entities must not carry.
+	 */
+	private List<Mapper<?>> excluded = new ArrayList<>();
+
+	/**
+	 * Creates a new Query.
+	 * @param controller Controller on which the Query runs.
+	 * @param classes Classes whose Components are given to the action.
+	 */
+	protected Query(Controller controller, Class<?>... classes) {
+		this.controller = controller;
+		this.included = new Mapper<?>[classes.length];
+		for(int i = 0; i < classes.length; i++)
+			this.included[i] = controller.getMapper(classes[i]);
+	}
+
+	/**
+	 * Excludes the Entities carrying a Component of a given class.
+	 * @param clazz The class.
+	 */
+	protected void exclude(Class<? extends Component> clazz) {
+		this.excluded.add(controller.getMapper(clazz));
+	}
+
+	/**
+	 * Runs an action on each Entity matching the Query.
+	 * A read lock is acquired for each Component given to the action and the
+	 * operation is executed in a MapperSpace (if not already done by the user
+	 * of the method).
+	 * @param action Action receiving the Entity and its Components (in the
+	 *               order of the classes of the Query). The array is reused
+	 *               between calls.
+	 */
+	protected void run(BiConsumer<Entity, Component[]> action) {
+		/* Classes owning their storage index are checked on the signature of
+		 * the Entity, the others (subclasses sharing the IDs of a parent) are
+		 * checked with their Mapper. */
+		long[] requiredMask = new long[0];
+		long[] excludedMask = new long[0];
+		BitSet archetypeRequired = new BitSet();
+		BitSet archetypeExcluded = new BitSet();
+		for(Mapper<?> mapper : included) {
+			if(mapper.handlesStorageClass())
+				requiredMask = Entity.withBit(requiredMask, mapper.getStorageIndex());
+			if(mapper.getSparseSet() == null)
+				archetypeRequired.set(mapper.getStorageIndex());
+		}
+		for(Mapper<?> mapper : excluded) {
+			if(mapper.handlesStorageClass()) {
+				excludedMask = Entity.withBit(excludedMask, mapper.getStorageIndex());
+				if(mapper.getSparseSet() == null)
+					archetypeExcluded.set(mapper.getStorageIndex());
+			}
+		}
+
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			Component[] components = new Component[included.length];
+			for(Entity entity : getCandidates(archetypeRequired, archetypeExcluded)) {
+				if(!entity.matchesSignature(requiredMask, excludedMask) || !collect(entity, components))
+					continue;
+				for(int i = 0; i < included.length; i++)
+					included[i].acquireReadLock(components[i]);
+				action.accept(entity, components);
+			}
+		}
+	}
+
+	/**
+	 * Helper method getting the smallest list of candidate Entities.
+	 * @param archetypeRequired Storage indices of the queried classes stored
+	 *                          in the ArchetypeStorage.
+	 * @param archetypeExcluded Storage indices of the excluded classes stored
+	 *                          in the ArchetypeStorage.
+	 * @return Snapshot of the candidate Entities.
+	 */
+	private List<Entity> getCandidates(BitSet archetypeRequired, BitSet archetypeExcluded) {
+		SparseSet smallest = null;
+		for(Mapper<?> mapper : included)
+			if(mapper.getSparseSet() != null && (smallest == null || mapper.getSparseSet().size() < smallest.size()))
+				smallest = mapper.getSparseSet();
+
+		if(archetypeRequired.isEmpty()
+				|| (smallest != null && smallest.size() < controller.getArchetypeStorage().count(archetypeRequired, archetypeExcluded))) {
+			logger.trace("Query driven by a sparse set of " + smallest.size() + " Components.");
+			return smallest.getEntities();
+		}
+
+		return controller.getArchetypeStorage().getEntities(archetypeRequired, archetypeExcluded);
+	}
+
+	/**
+	 * Helper method getting the queried Components of an Entity.
+	 * @param entity The Entity.
+	 * @param components Array in which the Components are stored.
+	 * @return true if the Entity carries all the queried and none of the
+	 *         excluded Components.
+	 */
+	private boolean collect(Entity entity, Component[] components) {
+		for(int i = 0; i < included.length; i++) {
+			components[i] = included[i].getOptimistic(entity);
+			if(components[i] == null)
+				return false;
+		}
+		for(Mapper<?> mapper : excluded)
+			if(mapper.getOptimistic(entity) != null)
+				return false;
+		return true;
+	}
+}
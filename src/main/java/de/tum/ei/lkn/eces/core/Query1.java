@@ -0,0 +1,57 @@
+package de.tum.ei.lkn.eces.core;
+
+/**
+ * Query giving one Component of each matching Entity to an action.
+ *
+ * @param <A> Class of the first Component.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class Query1<A extends Component> extends Query {
+	/**
+	 * Action run on each Entity matching a Query1.
+	 *
+	 * @param <A> Class of the first Component.
+	 */
+	@FunctionalInterface
+	public interface Action<A> {
+		/**
+		 * Runs the action.
+		 * @param entity The Entity.
+		 * @param a The first Component.
+		 */
+		void accept(Entity entity, A a);
+	}
+
+	/**
+	 * Creates a new Query1.
+	 * @param controller Controller on which the Query runs.
+	 * @param classA Class of the first Component.
+	 */
+	protected Query1(Controller controller, Class<A> classA) {
+		super(controller, classA);
+	}
+
+	/**
+	 * Excludes the Entities carrying a Component of a given class.
+	 * @param clazz The class.
+	 * @return The Query.
+	 */
+	public Query1<A> without(Class<? extends Component> clazz) {
+		this.exclude(clazz);
+		return this;
+	}
+
+	/**
+	 * Runs an action on each Entity matching the Query.
+	 * A read lock is acquired for each Component given to the action and the
+	 * operation is executed in a MapperSpace (if not already done by the user
+	 * of the method).
+	 * @param action The action.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(Action<? super A> action) {
+		this.run((entity, components) -> action.accept(entity, (A) components[0]));
+	}
+}
@@ -0,0 +1,61 @@
+package de.tum.ei.lkn.eces.core;
+
+/**
+ * Query giving 2 Components of each matching Entity to an action.
+ *
+ * @param <A> Class of the first Component.
+ * @param <B> Class of the second Component.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class Query2<A extends Component, B extends Component> extends Query {
+	/**
+	 * Action run on each Entity matching a Query2.
+	 *
+	 * @param <A> Class of the first Component.
+	 * @param <B> Class of the second Component.
+	 */
+	@FunctionalInterface
+	public interface Action<A, B> {
+		/**
+		 * Runs the action.
+		 * @param entity The Entity.
+		 * @param a The first Component.
+		 * @param b The second Component.
+		 */
+		void accept(Entity entity, A a, B b);
+	}
+
+	/**
+	 * Creates a new Query2.
+	 * @param controller Controller on which the Query runs.
+	 * @param classA Class of the first Component.
+	 * @param classB Class of the second Component.
+	 */
+	protected Query2(Controller controller, Class<A> classA, Class<B> classB) {
+		super(controller, classA, classB);
+	}
+
+	/**
+	 * Excludes the Entities carrying a Component of a given class.
+	 * @param clazz The class.
+	 * @return The Query.
+	 */
+	public Query2<A, B> without(Class<? extends Component> clazz) {
+		this.exclude(clazz);
+		return this;
+	}
+
+	/**
+	 * Runs an action on each Entity matching the Query.
+	 * A read lock is acquired for each Component given to the action and the
+	 * operation is executed in a MapperSpace (if not already done by the user
+	 * of the method).
+	 * @param action The action.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(Action<? super A, ? super B> action) {
+		this.run((entity, components) -> action.accept(entity, (A) components[0], (B) components[1]));
+	}
+}
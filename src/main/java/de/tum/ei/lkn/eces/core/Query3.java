@@ -0,0 +1,65 @@
+package de.tum.ei.lkn.eces.core;
+
+/**
+ * Query giving 3 Components of each matching Entity to an action.
+ *
+ * @param <A> Class of the first Component.
+ * @param <B> Class of the second Component.
+ * @param <C> Class of the third Component.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class Query3<A extends Component, B extends Component, C extends Component> extends Query {
+	/**
+	 * Action run on each Entity matching a Query3.
+	 *
+	 * @param <A> Class of the first Component.
+	 * @param <B> Class of the second Component.
+	 * @param <C> Class of the third Component.
+	 */
+	@FunctionalInterface
+	public interface Action<A, B, C> {
+		/**
+		 * Runs the action.
+		 * @param entity The Entity.
+		 * @param a The first Component.
+		 * @param b The second Component.
+		 * @param c The third Component.
+		 */
+		void accept(Entity entity, A a, B b, C c);
+	}
+
+	/**
+	 * Creates a new Query3.
+	 * @param controller Controller on which the Query runs.
+	 * @param classA Class of the first Component.
+	 * @param classB Class of the second Component.
+	 * @param classC Class of the third Component.
+	 */
+	protected Query3(Controller controller, Class<A> classA, Class<B> classB, Class<C> classC) {
+		super(controller, classA, classB, classC);
+	}
+
+	/**
+	 * Excludes the Entities carrying a Component of a given class.
+	 * @param clazz The class.
+	 * @return The Query.
+	 */
+	public Query3<A, B, C> without(Class<? extends Component> clazz) {
+		this.exclude(clazz);
+		return this;
+	}
+
+	/**
+	 * Runs an action on each Entity matching the Query.
+	 * A read lock is acquired for each Component given to the action and the
+	 * operation is executed in a MapperSpace (if not already done by the user
+	 * of the method).
+	 * @param action The action.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(Action<? super A, ? super B, ? super C> action) {
+		this.run((entity, components) -> action.accept(entity, (A) components[0], (B) components[1], (C) components[2]));
+	}
+}
@@ -0,0 +1,399 @@
+package de.tum.ei.lkn.eces.core;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Dispatcher running listener jobs from a preallocated ring buffer.
+ *
+ * Jobs are published in the slots of a ring whose size is a power of two.
+ * Each slot carries a sequence number telling whether it is free or holds a
+ * job, so that producers (threads closing MapperSpaces) and consumers (the
+ * worker threads of the dispatcher) claim slots with a single compare-and-set
+ * and without lock. Slots are reused: dispatching a job allocates nothing.
+ *
+ * The jobs of a MapperSpace are published with a Barrier counting the jobs
+ * which have not finished yet. The thread closing the MapperSpace waits on
+ * the Barrier instead of on one Future per job and, while waiting, runs the
+ * jobs of the ring itself. Hence, listeners closing MapperSpaces (cascades)
+ * always make progress. A producer finding the ring full also runs jobs
+ * until a slot is free. Barriers are recycled per thread.
+ *
+ * A dispatcher serves a single Controller.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class RingBufferDispatcher extends AbstractExecutorService {
+	/**
+	 * Logger.
+	 */
+	private final static Logger logger = Logger.getLogger(RingBufferDispatcher.class);
+
+	/**
+	 * Number of attempts of an idle thread before parking.
+	 */
+	private final static int SPINS = 100;
+
+	/**
+	 * Maximum time a parked thread waits before checking the ring again.
+	 */
+	private final static long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * Slot of the ring.
+	 */
+	private final static class Slot {
+		/**
+		 * Sequence number of the slot: equal to the next publishing sequence
+		 * for which the slot is free, and to this sequence plus one once the
+		 * job is published.
+		 */
+		volatile long sequence;
+
+		/**
+		 * Published job.
+		 */
+		Runnable job;
+
+		/**
+		 * Barrier of the job (may be null).
+		 */
+		Barrier barrier;
+	}
+
+	/**
+	 * Counter of the jobs of a MapperSpace which have not finished yet.
+	 */
+	public final static class Barrier {
+		/**
+		 * Number of unfinished jobs.
+		 */
+		private final AtomicInteger pending = new AtomicInteger();
+	}
+
+	/**
+	 * Slots of the ring.
+	 */
+	private final Slot[] ring;
+
+	/**
+	 * Mask giving the index of a sequence in the ring.
+	 */
+	private final int mask;
+
+	/**
+	 * Next sequence to publish.
+	 */
+	private final AtomicLong publishSequence = new AtomicLong();
+
+	/**
+	 * Next sequence to consume.
+	 */
+	private final AtomicLong consumeSequence = new AtomicLong();
+
+	/**
+	 * Worker threads.
+	 */
+	private final Thread[] workers;
+
+	/**
+	 * Whether each worker is parked.
+	 */
+	private final AtomicIntegerArray parked;
+
+	/**
+	 * Barriers which can be reused by each thread.
+	 */
+	private final ThreadLocal<Deque<Barrier>> freeBarriers = ThreadLocal.withInitial(ArrayDeque::new);
+
+	/**
+	 * Method running a job (e.g., outside of the MapperSpace of the thread).
+	 */
+	private volatile Consumer<Runnable> jobRunner = Runnable::run;
+
+	/**
+	 * Whether the dispatcher is shut down.
+	 */
+	private volatile boolean shutdown = false;
+
+	/**
+	 * Creates a new RingBufferDispatcher and starts its workers.
+	 * @param size Number of slots of the ring (power of two).
+	 * @param workerCount Number of worker threads.
+	 */
+	public RingBufferDispatcher(int size, int workerCount) {
+		if(size < 1 || Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("The size of a ring buffer must be a power of two (" + size + " given).");
+		if(workerCount < 1)
+			throw new IllegalArgumentException("A ring buffer dispatcher needs at least one worker (" + workerCount + " given).");
+
+		this.ring = new Slot[size];
+		for(int i = 0; i < size; i++) {
+			ring[i] = new Slot();
+			ring[i].sequence = i;
+		}
+		this.mask = size - 1;
+
+		this.workers = new Thread[workerCount];
+		this.parked = new AtomicIntegerArray(workerCount);
+		for(int i = 0; i < workerCount; i++) {
+			int index = i;
+			workers[i] = new Thread(() -> work(index), "ring-buffer-dispatcher-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Sets the method running the jobs. Used by the Controller so that jobs run
+	 * by threads closing a MapperSpace run outside of this MapperSpace.
+	 * @param jobRunner The method.
+	 */
+	void setJobRunner(Consumer<Runnable> jobRunner) {
+		this.jobRunner = jobRunner;
+	}
+
+	/**
+	 * Gets a Barrier for the jobs of a MapperSpace. The Barrier must be given
+	 * back with await().
+	 * @return The Barrier.
+	 */
+	public Barrier openBarrier() {
+		Barrier barrier = freeBarriers.get().poll();
+		return barrier == null ? new Barrier() : barrier;
+	}
+
+	/**
+	 * Publishes a job. If the ring is full, the calling thread runs jobs until
+	 * a slot is free.
+	 * @param job The job.
+	 * @param barrier Barrier of the job (may be null).
+	 * @throws RejectedExecutionException if the dispatcher is shut down.
+	 */
+	public void publish(Runnable job, Barrier barrier) {
+		if(shutdown)
+			throw new RejectedExecutionException("Ring buffer dispatcher shut down.");
+		if(barrier != null)
+			barrier.pending.incrementAndGet();
+
+		int idle = 0;
+		while(true) {
+			long sequence = publishSequence.get();
+			Slot slot = ring[(int) sequence & mask];
+			long difference = slot.sequence - sequence;
+			if(difference == 0) {
+				if(publishSequence.compareAndSet(sequence, sequence + 1)) {
+					slot.job = job;
+					slot.barrier = barrier;
+					slot.sequence = sequence + 1;
+					wakeUpWorker();
+					return;
+				}
+			} else if(difference < 0) {
+				// Ring full: help the workers.
+				if(!runOne())
+					idle = idle(idle);
+			}
+		}
+	}
+
+	/**
+	 * Waits until all the jobs published with a Barrier have finished. The
+	 * calling thread runs jobs of the ring while waiting. The Barrier is then
+	 * recycled and must not be used anymore.
+	 * @param barrier The Barrier.
+	 */
+	public void await(Barrier barrier) {
+		int idle = 0;
+		while(barrier.pending.get() > 0) {
+			if(runOne())
+				idle = 0;
+			else
+				idle = idle(idle);
+		}
+		freeBarriers.get().push(barrier);
+	}
+
+	/**
+	 * Waits until a Future is done. The calling thread runs jobs of the ring
+	 * while waiting, so that jobs the Future depends on cannot starve.
+	 * @param future The Future.
+	 */
+	public void helpUntilDone(Future<?> future) {
+		int idle = 0;
+		while(!future.isDone()) {
+			if(runOne())
+				idle = 0;
+			else
+				idle = idle(idle);
+		}
+	}
+
+	@Override
+	public void execute(Runnable job) {
+		publish(job, null);
+	}
+
+	/**
+	 * Gets the number of slots of the ring.
+	 * @return The size of the ring.
+	 */
+	public int getSize() {
+		return ring.length;
+	}
+
+	/**
+	 * Gets the number of jobs published and not consumed yet.
+	 * @return The number of jobs.
+	 */
+	public int getBacklog() {
+		return (int) Math.max(0, publishSequence.get() - consumeSequence.get());
+	}
+
+	/**
+	 * Claims and runs a published job, if any.
+	 * @return true if a job has been run.
+	 */
+	private boolean runOne() {
+		while(true) {
+			long sequence = consumeSequence.get();
+			Slot slot = ring[(int) sequence & mask];
+			long difference = slot.sequence - (sequence + 1);
+			if(difference == 0) {
+				if(consumeSequence.compareAndSet(sequence, sequence + 1)) {
+					Runnable job = slot.job;
+					Barrier barrier = slot.barrier;
+					slot.job = null;
+					slot.barrier = null;
+					slot.sequence = sequence + ring.length;
+					run(job, barrier);
+					return true;
+				}
+			} else if(difference < 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Runs a job and signals its Barrier.
+	 * @param job The job.
+	 * @param barrier Barrier of the job (may be null).
+	 */
+	private void run(Runnable job, Barrier barrier) {
+		try {
+			jobRunner.accept(job);
+		} catch (Throwable e) {
+			logger.error("Execution exception in listeners.", e);
+		} finally {
+			if(barrier != null)
+				barrier.pending.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Loop of a worker thread.
+	 * @param index Index of the worker.
+	 */
+	private void work(int index) {
+		int idle = 0;
+		while(!shutdown || getBacklog() > 0) {
+			if(runOne()) {
+				idle = 0;
+			} else if(idle < SPINS) {
+				idle++;
+				Thread.yield();
+			} else {
+				parked.set(index, 1);
+				if(getBacklog() == 0 && !shutdown)
+					LockSupport.parkNanos(this, PARK_NANOS);
+				parked.set(index, 0);
+			}
+		}
+	}
+
+	/**
+	 * Helper method waiting a bit when no job is available.
+	 * @param idle Number of previous unsuccessful attempts.
+	 * @return Number of unsuccessful attempts, including this one.
+	 */
+	private int idle(int idle) {
+		if(idle < SPINS)
+			Thread.yield();
+		else
+			LockSupport.parkNanos(this, PARK_NANOS / 10);
+		return idle + 1;
+	}
+
+	/**
+	 * Wakes up a parked worker, if any. Parked workers anyway check the ring
+	 * periodically.
+	 */
+	private void wakeUpWorker() {
+		for(int i = 0; i < workers.length; i++) {
+			if(parked.get(i) == 1 && parked.compareAndSet(i, 1, 0)) {
+				LockSupport.unpark(workers[i]);
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		for(Thread worker : workers)
+			LockSupport.unpark(worker);
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown();
+		return Collections.emptyList();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		if(!shutdown)
+			return false;
+		for(Thread worker : workers)
+			if(worker.isAlive())
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for(Thread worker : workers) {
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0)
+				return isTerminated();
+			TimeUnit.NANOSECONDS.timedJoin(worker, remaining);
+		}
+		return isTerminated();
+	}
+
+	@Override
+	public String toString() {
+		return "Ring buffer dispatcher (" + ring.length + " slots, " + workers.length + " workers)";
+	}
+}
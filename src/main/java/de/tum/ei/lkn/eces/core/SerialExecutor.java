@@ -0,0 +1,130 @@
+package de.tum.ei.lkn.eces.core;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Executor running the jobs submitted to it one after the other, in
+ * submission order, on an underlying Executor. This is the mailbox of a
+ * System whose listeners run serially (see RunsSerially).
+ *
+ * The queued jobs are run by a single job of the underlying Executor, which
+ * is only submitted when the queue is not already being processed. A job
+ * submitted by the thread currently processing the queue (e.g., a listener
+ * closing a MapperSpace) is run directly, as waiting for it would never end.
+ * A thread processing the queue must not wait either for jobs of other
+ * SerialExecutors: these could be waiting for it (see isProcessingThread()).
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+class SerialExecutor implements Executor {
+	/**
+	 * Logger.
+	 */
+	private final static Logger logger = Logger.getLogger(SerialExecutor.class);
+
+	/**
+	 * Whether the current thread is processing the queue of a SerialExecutor.
+	 */
+	private final static ThreadLocal<Boolean> processing = new ThreadLocal<>();
+
+	/**
+	 * Executor on which the jobs run.
+	 */
+	private final Executor executor;
+
+	/**
+	 * Jobs waiting to be run.
+	 */
+	private final Queue<Runnable> jobs = new ArrayDeque<>();
+
+	/**
+	 * Thread currently processing the queue (null if none).
+	 */
+	private volatile Thread runner = null;
+
+	/**
+	 * Whether a job processing the queue is submitted or running.
+	 */
+	private boolean running = false;
+
+	/**
+	 * Creates a new SerialExecutor.
+	 * @param executor Executor on which the jobs run.
+	 */
+	SerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void execute(Runnable job) {
+		if(Thread.currentThread() == runner) {
+			job.run();
+			return;
+		}
+
+		synchronized(this) {
+			jobs.add(job);
+			if(running)
+				return;
+			running = true;
+		}
+
+		// The underlying Executor may run the job directly: no lock is held.
+		try {
+			executor.execute(this::processQueue);
+		} catch (RuntimeException e) {
+			synchronized(this) {
+				running = false;
+				jobs.clear();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Runs the queued jobs until the queue is empty.
+	 */
+	private void processQueue() {
+		// The underlying Executor may run this in the thread of another queue.
+		Boolean previous = processing.get();
+		processing.set(Boolean.TRUE);
+		runner = Thread.currentThread();
+		try {
+			while(true) {
+				Runnable job;
+				synchronized(this) {
+					job = jobs.poll();
+					if(job == null) {
+						runner = null;
+						running = false;
+						return;
+					}
+				}
+				try {
+					job.run();
+				} catch (RuntimeException e) {
+					logger.error("Job of a serial executor failed.", e);
+				}
+			}
+		} finally {
+			if(previous == null)
+				processing.remove();
+		}
+	}
+
+	/**
+	 * Tells whether the current thread is processing the queue of a
+	 * SerialExecutor. Such a thread must not wait for the jobs of another
+	 * SerialExecutor: if the thread processing the other queue waits for a
+	 * job queued behind the current one, both threads wait forever.
+	 * @return true if the current thread is processing a queue.
+	 */
+	static boolean isProcessingThread() {
+		return processing.get() != null;
+	}
+}
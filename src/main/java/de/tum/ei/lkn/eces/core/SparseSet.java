@@ -0,0 +1,177 @@
+package de.tum.ei.lkn.eces.core;
+
+import de.tum.ei.lkn.eces.core.exceptions.MapperException;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sparse set storing the Components of a given type, keyed by Entity ID.
+ * A sparse index (organized in pages so that large IDs do not require large
+ * arrays) maps each Entity ID to a position in two dense arrays holding the
+ * Entities and their Components. Adding and removing a Component are done in
+ * constant time (removal moves the last element in place of the removed one)
+ * and iterating goes through the packed dense array.
+ *
+ * All the methods are synchronized on the set.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+class SparseSet {
+	/**
+	 * Number of bits of an Entity ID used to index a page.
+	 */
+	private final static int PAGE_BITS = 12;
+
+	/**
+	 * Number of entries of a page.
+	 */
+	private final static int PAGE_SIZE = 1 << PAGE_BITS;
+
+	/**
+	 * Number of dense entries allocated when the set is created.
+	 */
+	private final static int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Pages of the sparse index. An entry is the position of the Entity in
+	 * the dense arrays plus one (0 meaning absent).
+	 */
+	private int[][] pages = new int[0][];
+
+	/**
+	 * Dense array of Entities.
+	 */
+	private Entity[] entities = new Entity[INITIAL_CAPACITY];
+
+	/**
+	 * Dense array of Components. The Component at position i is attached to
+	 * the Entity at position i of the Entities array.
+	 */
+	private Component[] components = new Component[INITIAL_CAPACITY];
+
+	/**
+	 * Number of elements in the dense arrays.
+	 */
+	private int size = 0;
+
+	/**
+	 * Stores the Component of an Entity. If the Entity already has a
+	 * Component in the set, it is replaced.
+	 * @param entity The Entity.
+	 * @param component The Component.
+	 * @throws MapperException if another Entity with the same ID is in the set.
+	 */
+	protected synchronized void add(Entity entity, Component component) {
+		int position = getPosition(entity.getId());
+		if(position >= 0) {
+			if(entities[position] != entity)
+				throw new MapperException("Another Entity with ID " + entity.getId() + " is already stored.");
+			components[position] = component;
+			return;
+		}
+
+		if(size == entities.length) {
+			entities = Arrays.copyOf(entities, size * 2);
+			components = Arrays.copyOf(components, size * 2);
+		}
+		entities[size] = entity;
+		components[size] = component;
+		setPosition(entity.getId(), size++);
+	}
+
+	/**
+	 * Removes the Component of an Entity.
+	 * @param entity The Entity.
+	 * @return The removed Component or null if the Entity has no Component
+	 *         in the set.
+	 */
+	protected synchronized Component remove(Entity entity) {
+		int position = getPosition(entity.getId());
+		if(position < 0 || entities[position] != entity)
+			return null;
+
+		Component removed = components[position];
+		int last = --size;
+		if(position != last) {
+			entities[position] = entities[last];
+			components[position] = components[last];
+			setPosition(entities[position].getId(), position);
+		}
+		entities[last] = null;
+		components[last] = null;
+		setPosition(entity.getId(), -1);
+		return removed;
+	}
+
+	/**
+	 * Gets the Component of an Entity.
+	 * @param entity The Entity.
+	 * @return The Component or null if the Entity has no Component in the set.
+	 */
+	protected synchronized Component get(Entity entity) {
+		int position = getPosition(entity.getId());
+		if(position < 0 || entities[position] != entity)
+			return null;
+		return components[position];
+	}
+
+	/**
+	 * Gets the number of Components in the set.
+	 * @return number of Components.
+	 */
+	protected synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Gets all the Components of the set.
+	 * @return Snapshot of the dense array of Components.
+	 */
+	protected synchronized List<Component> getComponents() {
+		return Arrays.asList(Arrays.copyOf(components, size));
+	}
+
+	/**
+	 * Gets all the Entities of the set.
+	 * @return Snapshot of the dense array of Entities.
+	 */
+	protected synchronized List<Entity> getEntities() {
+		return Arrays.asList(Arrays.copyOf(entities, size));
+	}
+
+	/**
+	 * Helper method getting the dense position of an Entity ID.
+	 * @param id The Entity ID.
+	 * @return The position or -1 if the ID is not in the set.
+	 */
+	private int getPosition(long id) {
+		long page = id >>> PAGE_BITS;
+		if(page >= pages.length || pages[(int) page] == null)
+			return -1;
+		return pages[(int) page][(int) (id & (PAGE_SIZE - 1))] - 1;
+	}
+
+	/**
+	 * Helper method setting the dense position of an Entity ID.
+	 * @param id The Entity ID.
+	 * @param position The position (-1 to remove the ID).
+	 */
+	private void setPosition(long id, int position) {
+		long page = id >>> PAGE_BITS;
+		if(page > Integer.MAX_VALUE - 1)
+			throw new MapperException("Entity ID " + id + " is too large to be stored in a sparse set.");
+		if(page >= pages.length) {
+			if(position < 0)
+				return;
+			pages = Arrays.copyOf(pages, (int) page + 1);
+		}
+		if(pages[(int) page] == null) {
+			if(position < 0)
+				return;
+			pages[(int) page] = new int[PAGE_SIZE];
+		}
+		pages[(int) page][(int) (id & (PAGE_SIZE - 1))] = position + 1;
+	}
+}
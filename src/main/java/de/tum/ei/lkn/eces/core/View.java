@@ -0,0 +1,153 @@
+package de.tum.ei.lkn.eces.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A View is the live result of a query registered to a Controller: the set of
+ * the Entities carrying a Component of each of some given classes and whose
+ * Component of the first class is accepted by some Filters.
+ *
+ * The Controller keeps the View up to date when closing MapperSpaces (after
+ * the attachment, detachment and update jobs and before the listeners), so
+ * that reading a View never recomputes the query. Reads are done on a
+ * snapshot which is only rebuilt after the View has changed, and do not
+ * acquire any lock.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class View {
+	/**
+	 * Mappers of the classes of the Components the Entities must carry.
+	 */
+	private Mapper<?>[] mappers;
+
+	/**
+	 * Filters applied to the Component of the first class.
+	 */
+	private Filter[] filters;
+
+	/**
+	 * Entities currently in the View.
+	 */
+	private final Set<Entity> members = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Snapshot of the Entities of the View, sorted by increasing ID.
+	 */
+	private volatile List<Entity> snapshot = Collections.emptyList();
+
+	/**
+	 * Whether the View changed since the last snapshot.
+	 */
+	private volatile boolean dirty = false;
+
+	/**
+	 * Creates a new View. Views are created by Controller.registerView().
+	 * @param controller Controller maintaining the View.
+	 * @param filters Filters applied to the Component of the first class.
+	 * @param componentClasses Classes of the Components the Entities must
+	 *                         carry.
+	 */
+	protected View(Controller controller, Filter[] filters, Class<?>[] componentClasses) {
+		this.filters = filters.clone();
+		this.mappers = new Mapper<?>[componentClasses.length];
+		for(int i = 0; i < componentClasses.length; i++)
+			this.mappers[i] = controller.getMapper(componentClasses[i]);
+	}
+
+	/**
+	 * Gets the Entities of the View. No lock is acquired.
+	 * @return Unmodifiable snapshot of the Entities, sorted by increasing ID.
+	 */
+	public List<Entity> getEntities() {
+		if(dirty) {
+			synchronized(this) {
+				if(dirty) {
+					dirty = false;
+					List<Entity> list = new ArrayList<>(members);
+					list.sort(Comparator.comparingLong(Entity::getId));
+					snapshot = Collections.unmodifiableList(list);
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Runs an action on each Entity of the View. No lock is acquired.
+	 * @param action The action.
+	 */
+	public void forEach(Consumer<? super Entity> action) {
+		getEntities().forEach(action);
+	}
+
+	/**
+	 * Checks whether an Entity is in the View. No lock is acquired.
+	 * @param entity The Entity.
+	 * @return true if the Entity is in the View.
+	 */
+	public boolean contains(Entity entity) {
+		return members.contains(entity);
+	}
+
+	/**
+	 * Gets the number of Entities in the View.
+	 * @return number of Entities.
+	 */
+	public int size() {
+		return members.size();
+	}
+
+	/**
+	 * Checks again whether an Entity belongs to the View. Refreshes are
+	 * serialized so that concurrent refreshes of an Entity cannot leave a
+	 * stale membership.
+	 * @param entity The Entity.
+	 */
+	protected synchronized void refresh(Entity entity) {
+		boolean changed;
+		if(matches(entity))
+			changed = members.add(entity);
+		else
+			changed = members.remove(entity);
+		if(changed)
+			dirty = true;
+	}
+
+	/**
+	 * Helper method checking whether an Entity matches the query of the View.
+	 * @param entity The Entity.
+	 * @return true if the Entity carries all the Components and if the
+	 *         Component of the first class is accepted by the Filters.
+	 */
+	private boolean matches(Entity entity) {
+		if(entity.isDestroyed())
+			return false;
+		for(Mapper<?> mapper : mappers)
+			if(mapper.getOptimistic(entity) == null)
+				return false;
+
+		Component component = mappers[0].getOptimistic(entity);
+		for(Filter filter : filters)
+			if(!filter.isAccepted(component))
+				return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("View on");
+		for(Mapper<?> mapper : mappers)
+			result.append(" ").append(mapper.getType().getSimpleName());
+		for(Filter filter : filters)
+			result.append("; ").append(filter);
+		return result.toString();
+	}
+}
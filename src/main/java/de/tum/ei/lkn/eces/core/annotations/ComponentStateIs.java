@@ -12,6 +12,11 @@ import java.lang.annotation.Target;
  * specify that a method should be run when an event associated to a specific
  * Component is triggered (default: any event).
  *
+ * By default, a listener to updates is run once per updated Component when a
+ * MapperSpace is closed, whatever the number of updates of the Component in
+ * the MapperSpace, and is not run for Components detached in the same
+ * MapperSpace.
+ *
  * @author Jochen Guck
  * @author Amaury Van Bemten
  */
@@ -19,4 +24,10 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 public @interface ComponentStateIs {
 	ComponentStatus State() default ComponentStatus.Any;
+
+	/**
+	 * Whether the updates of a Component in a MapperSpace are coalesced into
+	 * a single event. If false, the listener is run once per update.
+	 */
+	boolean Coalesce() default true;
 }
\ No newline at end of file
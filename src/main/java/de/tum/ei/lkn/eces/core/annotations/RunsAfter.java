@@ -0,0 +1,27 @@
+package de.tum.ei.lkn.eces.core.annotations;
+
+import de.tum.ei.lkn.eces.core.RootSystem;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation allowing to specify that the listeners of a System must run
+ * after the listeners of other Systems. When a MapperSpace is closed, the
+ * listeners of the System to a given event are only started once the
+ * listeners of the given Systems to this event have finished. Systems which
+ * are not ordered with respect to each other still run in parallel.
+ *
+ * The order is checked when the System is registered: a cyclic order is
+ * refused.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface RunsAfter {
+	Class<? extends RootSystem>[] value();
+}
@@ -0,0 +1,29 @@
+package de.tum.ei.lkn.eces.core.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation allowing to specify that the listeners of a System never run
+ * concurrently with each other. The listener jobs of the System are queued
+ * in a mailbox of the System and run one after the other, in the order of
+ * the events, while the listeners of the other Systems keep running in
+ * parallel. Listener methods of such a System therefore need no
+ * synchronization.
+ *
+ * A listener of such a System closing a MapperSpace which triggers
+ * listeners of the same System runs them directly. Listeners of the other
+ * Systems running serially (or of ordered Systems, see RunsAfter) triggered
+ * this way are not awaited: they run later, on their mailboxes, so that two
+ * such Systems whose listeners trigger each other's listeners do not
+ * deadlock.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface RunsSerially {
+}
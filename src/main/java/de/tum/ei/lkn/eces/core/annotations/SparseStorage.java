@@ -0,0 +1,22 @@
+package de.tum.ei.lkn.eces.core.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation allowing to specify that the Components of a class (which must
+ * carry the ComponentBelongsTo annotation) are stored in a sparse set owned by
+ * their Mapper instead of in the Archetypes of the Controller. Attaching and
+ * detaching such Components is done in constant time without moving the
+ * Entity from an Archetype to another. This is suited for Component types
+ * which are frequently attached and detached.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SparseStorage {
+}
@@ -0,0 +1,115 @@
+package de.tum.ei.lkn.eces.core;
+
+import de.tum.ei.lkn.eces.core.mocks.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for de.tum.ei.lkn.eces.core.ArchetypeStorage.java.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class ArchetypeStorageTest {
+
+	@Test
+	public final void testAttachMovesEntity() {
+		Controller controller = new Controller();
+		Mapper<C1S1> c1S1Mapper = controller.getMapper(C1S1.class);
+		Mapper<C2S1> c2S1Mapper = controller.getMapper(C2S1.class);
+		int c1S1Index = controller.getStorageIndex(0, 0);
+		int c2S1Index = controller.getStorageIndex(0, 1);
+
+		Entity ent1 = controller.createEntity();
+		Entity ent2 = controller.createEntity();
+		C1S1 c1S1 = new C1S1();
+		c1S1Mapper.attachComponent(ent1, c1S1);
+		c1S1Mapper.attachComponent(ent2, new C1S1());
+
+		assertNotNull("Entity should be stored", ent1.getArchetype());
+		assertSame("Both Entities should share the same Archetype", ent1.getArchetype(), ent2.getArchetype());
+		assertEquals("Archetype should hold two Entities", 2, ent1.getArchetype().size());
+
+		C2S1 c2S1 = new C2S1();
+		c2S1Mapper.attachComponent(ent1, c2S1);
+		assertNotSame("Entity should have moved to another Archetype", ent1.getArchetype(), ent2.getArchetype());
+		assertSame("Component should have been moved with the Entity", c1S1, ent1.getArchetype().get(c1S1Index, ent1.getRow()));
+		assertSame("Component should have been stored", c2S1, ent1.getArchetype().get(c2S1Index, ent1.getRow()));
+		assertEquals("Old Archetype should hold one Entity", 1, ent2.getArchetype().size());
+		assertEquals("Remaining Entity should have been moved to row 0", 0, ent2.getRow());
+
+		List<Archetype> archetypes = controller.getArchetypeStorage().getArchetypes(c1S1Index);
+		assertEquals("Two Archetypes should carry C1S1", 2, archetypes.size());
+		archetypes = controller.getArchetypeStorage().getArchetypes(c2S1Index);
+		assertEquals("One Archetype should carry C2S1", 1, archetypes.size());
+	}
+
+	@Test
+	public final void testDetachMovesEntity() {
+		Controller controller = new Controller();
+		Mapper<C1S1> c1S1Mapper = controller.getMapper(C1S1.class);
+		Mapper<C2S1> c2S1Mapper = controller.getMapper(C2S1.class);
+		int c2S1Index = controller.getStorageIndex(0, 1);
+
+		Entity ent = controller.createEntity();
+		C2S1 c2S1 = new C2S1();
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			c1S1Mapper.attachComponent(ent, new C1S1());
+			c2S1Mapper.attachComponent(ent, c2S1);
+		}
+
+		c1S1Mapper.detachComponent(ent);
+		assertFalse("Archetype should not carry C1S1 anymore", ent.getArchetype().has(controller.getStorageIndex(0, 0)));
+		assertSame("Remaining Component should have been moved", c2S1, ent.getArchetype().get(c2S1Index, ent.getRow()));
+
+		c2S1Mapper.detachComponent(ent);
+		assertNull("Entity without Components should not be stored", ent.getArchetype());
+		assertEquals("Entity without Components should have no row", -1, ent.getRow());
+	}
+
+	@Test(timeout=20000)
+	public final void testConcurrentMoves() throws InterruptedException {
+		Controller controller = new Controller();
+		Mapper<C1S1> c1S1Mapper = controller.getMapper(C1S1.class);
+		Mapper<C2S1> c2S1Mapper = controller.getMapper(C2S1.class);
+		int c1S1Index = controller.getStorageIndex(0, 0);
+		int c2S1Index = controller.getStorageIndex(0, 1);
+
+		List<Thread> threads = new ArrayList<>();
+		List<Entity> entities = new ArrayList<>();
+		for(int t = 0; t < 4; t++) {
+			List<Entity> own = new ArrayList<>();
+			for(int i = 0; i < 200; i++)
+				own.add(controller.createEntity());
+			entities.addAll(own);
+			threads.add(new Thread(() -> {
+				for(int round = 0; round < 5; round++) {
+					for(Entity entity : own) {
+						c1S1Mapper.attachComponent(entity, new C1S1());
+						c2S1Mapper.attachComponent(entity, new C2S1());
+					}
+					// Snapshots are taken while other threads move Entities.
+					controller.getArchetypeStorage().getComponents(c1S1Index);
+					for(Entity entity : own) {
+						c1S1Mapper.detachComponent(entity);
+						if(round < 4)
+							c2S1Mapper.detachComponent(entity);
+					}
+				}
+			}));
+		}
+		for(Thread thread : threads)
+			thread.start();
+		for(Thread thread : threads)
+			thread.join();
+
+		assertEquals("No C1S1 should be stored", 0, controller.getArchetypeStorage().count(c1S1Index));
+		assertEquals("All the C2S1 should be stored", entities.size(), controller.getArchetypeStorage().count(c2S1Index));
+		for(Entity entity : entities)
+			assertSame("Rows should be consistent", entity, entity.getArchetype().getEntity(entity.getRow()));
+	}
+}
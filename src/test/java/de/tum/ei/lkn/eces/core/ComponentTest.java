@@ -26,5 +26,16 @@ public class ComponentTest {
 		Component clone = comp.clone();
 		assertNull("The clone Component should have no Entity set", clone.getEntity());
 		assertNotSame("The new Component should have a different lock object than the original Component", clone.getLock(), comp.getLock());
+		assertSame("The lock of a Component should not change", clone.getLock(), clone.getLock());
+	}
+
+	@Test
+	public void lockOrderTest() {
+		Component first = new C1();
+		Component second = new C1();
+		second.getLock();
+		first.getLock();
+		assertTrue("Locks should be numbered in allocation order", second.getLockOrder() < first.getLockOrder());
+		assertEquals("The number of a lock should not change", first.getLockOrder(), first.getLockOrder());
 	}
 }
@@ -3,12 +3,25 @@ package de.tum.ei.lkn.eces.core;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
 import de.tum.ei.lkn.eces.core.exceptions.ControllerException;
+import de.tum.ei.lkn.eces.core.exceptions.MapperException;
 import de.tum.ei.lkn.eces.core.mocks.*;
+import de.tum.ei.lkn.eces.core.util.EventCountTestSystem;
 import org.junit.Test;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -204,4 +217,600 @@ public class ControllerTest {
 		result = c.findAllListeners(s, ComponentStatus.Destroyed);
 		assertEquals("Not the right amount of listeners", 2, result.size());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public final void testEntityRegistry() {
+		Controller c = new Controller();
+		assertEquals("No Entity should be registered", 0, c.getNumberOfEntities());
+		Entity ent1 = c.createEntity();
+		Entity ent2 = c.createEntity();
+		assertEquals("Two Entities should be registered", 2, c.getNumberOfEntities());
+		assertSame("Registry returns wrong Entity", ent1, c.getEntity(ent1.getId()));
+		assertSame("Registry returns wrong Entity", ent2, c.getEntity(ent2.getId()));
+		assertNull("Unknown ID should return null", c.getEntity(42));
+	}
+
+	@Test
+	public final void testCreateEntities() {
+		Controller c = new Controller();
+		Entity first = c.createEntity();
+		List<Entity> entities = c.createEntities(100);
+		assertEquals("Wrong number of created Entities", 100, entities.size());
+		for(int i = 1; i < entities.size(); i++)
+			assertEquals("Bulk created Entities should have consecutive IDs", entities.get(i - 1).getId() + 1, entities.get(i).getId());
+		assertEquals("All Entities should be registered", 101, c.getNumberOfEntities());
+		assertTrue("IDs should be unique", first.getId() != entities.get(0).getId());
+		assertTrue("An empty list should be created", c.createEntities(0).isEmpty());
+	}
+
+	@Test(timeout=10000)
+	public final void testConcurrentEntityCreation() throws InterruptedException {
+		Controller c = new Controller();
+		int threads = 8;
+		int entitiesPerThread = 5000;
+		Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<>());
+		Thread[] workers = new Thread[threads];
+		for(int i = 0; i < threads; i++) {
+			workers[i] = new Thread(() -> {
+				for(int j = 0; j < entitiesPerThread; j++)
+					ids.add(c.createEntity().getId());
+				for(Entity entity : c.createEntities(10))
+					ids.add(entity.getId());
+			});
+			workers[i].start();
+		}
+		for(Thread worker : workers)
+			worker.join();
+
+		assertEquals("Entity IDs should be unique", threads * (entitiesPerThread + 10), ids.size());
+		assertEquals("All Entities should be registered", threads * (entitiesPerThread + 10), c.getNumberOfEntities());
+	}
+
+	@Test(timeout=10000)
+	public final void testConcurrentMapperCreation() throws InterruptedException {
+		List<Class<? extends Component>> classes = ImmutableList.of(C1.class, C1S1.class, C2S1.class, C5S1.class, I1S1.class, C1S2.class);
+		for(int run = 0; run < 200; run++) {
+			Controller c = new Controller();
+			CyclicBarrier barrier = new CyclicBarrier(classes.size());
+			List<Mapper<?>> mappers = Collections.synchronizedList(new ArrayList<>());
+			Thread[] workers = new Thread[classes.size()];
+			for(int i = 0; i < classes.size(); i++) {
+				Class<? extends Component> clazz = classes.get(i);
+				workers[i] = new Thread(() -> {
+					try {
+						barrier.await();
+					} catch(InterruptedException | BrokenBarrierException e) {
+						return;
+					}
+					mappers.add(c.getMapper(clazz));
+				});
+				workers[i].start();
+			}
+			for(Thread worker : workers)
+				worker.join();
+
+			assertEquals("All Mappers should have been created", classes.size(), mappers.size());
+			Set<Integer> storageIndices = new HashSet<>();
+			for(Mapper<?> mapper : mappers)
+				storageIndices.add(mapper.getStorageIndex());
+			assertEquals("Storage indices should be unique", classes.size(), storageIndices.size());
+			for(Class<? extends Component> clazz : classes)
+				assertSame("A single Mapper should be created per class", c.getMapper(clazz), c.getMapper(clazz));
+		}
+	}
+
+	@Test
+	public final void testDestroyEntity() {
+		Controller c = new Controller();
+		EventCountTestSystem system = new EventCountTestSystem(c);
+		Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+		Mapper<C2S1> c2S1Mapper = c.getMapper(C2S1.class);
+		Entity ent = c.createEntity();
+		C1S1 c1S1 = new C1S1();
+		try(MapperSpace ms = c.startMapperSpace()) {
+			c1S1Mapper.attachComponent(ent, c1S1);
+			c2S1Mapper.attachComponent(ent, new C2S1());
+		}
+		system.reset();
+
+		c.destroyEntity(ent);
+		system.doFullCheck(C1S1.class, 0, 0, 1);
+		system.doFullCheck(C2S1.class, 0, 0, 1);
+		system.checkIfEmpty();
+		assertFalse("Entity should not be alive anymore", c.isAlive(ent));
+		assertTrue("Entity should be destroyed", ent.isDestroyed());
+		assertNull("Components should have been detached", c1S1Mapper.get(ent));
+		assertNull("Entity should not be registered anymore", c.getEntity(ent.getId()));
+		assertEquals("No Entity should be registered", 0, c.getNumberOfEntities());
+		assertNull("Entity should not be stored anymore", ent.getArchetype());
+
+		try {
+			c1S1Mapper.attachComponent(ent, new C1S1());
+			fail("Attaching to a destroyed Entity should not be possible");
+		} catch(MapperException e) {
+			assertTrue(true);
+		}
+
+		try {
+			c.destroyEntity(ent);
+			fail("Destroying an Entity twice should not be possible");
+		} catch(ControllerException e) {
+			assertTrue(true);
+		}
+
+		Entity recycled = c.createEntity();
+		assertEquals("ID should be reused", ent.getId(), recycled.getId());
+		assertEquals("Generation should be incremented", ent.getGeneration() + 1, recycled.getGeneration());
+		assertTrue("New Entity should be alive", c.isAlive(recycled));
+		assertFalse("Stale Entity should not be alive", c.isAlive(ent));
+		assertNull("Stale handle should be detected", c.getEntity(ent.getId(), ent.getGeneration()));
+		assertSame("New handle should be valid", recycled, c.getEntity(recycled.getId(), recycled.getGeneration()));
+		assertNull("New Entity should not carry old Components", c1S1Mapper.get(recycled));
+	}
+
+	@Test
+	public final void testDestroyEntityInMapperSpace() {
+		Controller c = new Controller();
+		EventCountTestSystem system = new EventCountTestSystem(c);
+		Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+		Mapper<C2S1> c2S1Mapper = c.getMapper(C2S1.class);
+
+		// Attachment before the destruction: applied, then undone.
+		Entity ent = c.createEntity();
+		try(MapperSpace ms = c.startMapperSpace()) {
+			c1S1Mapper.attachComponent(ent, new C1S1());
+			c.destroyEntity(ent);
+			assertTrue("Entity should be alive until the MapperSpace is closed", c.isAlive(ent));
+			try {
+				c.destroyEntity(ent);
+				fail("Destroying an Entity twice should not be possible");
+			} catch(ControllerException e) {
+				assertTrue(true);
+			}
+		}
+		system.doFullCheck(C1S1.class, 1, 0, 1);
+		system.checkIfEmpty();
+		assertFalse("Entity should not be alive anymore", c.isAlive(ent));
+		assertNull("Component should have been detached", c1S1Mapper.get(ent));
+		assertEquals("No Entity should be registered", 0, c.getNumberOfEntities());
+
+		// Attachment after the destruction: refused.
+		system.reset();
+		ent = c.createEntity();
+		c1S1Mapper.attachComponent(ent, new C1S1());
+		system.reset();
+		try(MapperSpace ms = c.startMapperSpace()) {
+			c.destroyEntity(ent);
+			try {
+				c2S1Mapper.attachComponent(ent, new C2S1());
+				fail("Attaching to an Entity destroyed in the MapperSpace should not be possible");
+			} catch(MapperException e) {
+				assertTrue(true);
+			}
+		}
+		system.doFullCheck(C1S1.class, 0, 0, 1);
+		system.checkIfEmpty();
+		assertFalse("Entity should not be alive anymore", c.isAlive(ent));
+		assertNull("Entity should not be stored anymore", ent.getArchetype());
+
+		// Detachment before the destruction: a single detachment.
+		system.reset();
+		ent = c.createEntity();
+		try(MapperSpace ms = c.startMapperSpace()) {
+			c1S1Mapper.attachComponent(ent, new C1S1());
+			c2S1Mapper.attachComponent(ent, new C2S1());
+		}
+		system.reset();
+		try(MapperSpace ms = c.startMapperSpace()) {
+			c1S1Mapper.detachComponent(ent);
+			c.destroyEntity(ent);
+		}
+		system.doFullCheck(C1S1.class, 0, 0, 1);
+		system.doFullCheck(C2S1.class, 0, 0, 1);
+		system.checkIfEmpty();
+		assertFalse("Entity should not be alive anymore", c.isAlive(ent));
+		assertEquals("No Entity should be registered", 0, c.getNumberOfEntities());
+	}
+
+	@Test
+	public final void testSeal() {
+		Controller c = new Controller();
+		new S1(c);
+		Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+		c.getMapper(C2S1.class);
+		assertFalse("Controller should not be sealed", c.isSealed());
+		c.seal();
+		assertTrue("Controller should be sealed", c.isSealed());
+
+		try {
+			new S2(c);
+			fail("A new System should not be registered to a sealed Controller");
+		} catch(ControllerException e) {
+			assertEquals("The System should not be registered", 1, c.getNumberOfSystems());
+			assertFalse("The listeners of the System should not be added", c.hasListeners(new C1S1(), ComponentStatus.Destroyed));
+			assertFalse("The listeners of the System should not be added", c.hasListeners(new C2S1(), ComponentStatus.Destroyed));
+		}
+
+		try {
+			c.getMapper(C1S2.class);
+			fail("A new Component class should not get an ID in a sealed Controller");
+		} catch(ControllerException e) {
+			assertTrue(true);
+		}
+
+		try {
+			c.getMapper(C5S1.class);
+			fail("A new Component class of a registered System should not get an ID in a sealed Controller");
+		} catch(ControllerException e) {
+			assertEquals("The layout of the System should not grow", 2, c.getMaximumComponentCount(0));
+		}
+
+		// C4S1 shares the ID of its annotated parent C2S1.
+		Mapper<C4S1> c4S1Mapper = c.getMapper(C4S1.class);
+
+		Entity ent = c.createEntity();
+		assertEquals("Entity should know all the Systems", 1, ent.getNumberOfSystems());
+		assertEquals("Entity should know all the Components", 2, ent.getNumberOfComponents(0));
+		assertTrue("Entity should be able to hold all Components", ent.canHold(0, 0));
+		assertTrue("Entity should be able to hold all Components", ent.canHold(0, 1));
+		for(Entity entity : c.createEntities(3))
+			assertEquals("Entity should know all the Components", 2, entity.getNumberOfComponents(0));
+
+		C1S1 c1S1 = new C1S1();
+		C4S1 c4S1 = new C4S1();
+		try(MapperSpace ms = c.startMapperSpace()) {
+			c1S1Mapper.attachComponent(ent, c1S1);
+			c4S1Mapper.attachComponent(ent, c4S1);
+		}
+		assertSame("Component should be attached", c1S1, c1S1Mapper.get(ent));
+		assertSame("Component should be attached", c4S1, c4S1Mapper.get(ent));
+	}
+
+	@Test
+	public final void testListenerReadLocksReleased() {
+		Controller c = new Controller();
+		new EventCountTestSystem(c);
+		Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+		C1S1 c1S1 = new C1S1();
+		c1S1Mapper.attachComponent(c.createEntity(), c1S1);
+		assertEquals("Listeners should not keep read locks", 0, c1S1.getLock().getReadLockCount());
+		c1S1Mapper.updateComponent(c1S1, () -> {});
+		assertEquals("Listeners should not keep read locks", 0, c1S1.getLock().getReadLockCount());
+	}
+
+	@Test
+	public final void testDispatchTablesRefreshedOnRegisterSystem() {
+		Controller c = new Controller();
+		Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+		c1S1Mapper.attachComponent(c.createEntity(), new C1S1());
+
+		EventCountTestSystem system = new EventCountTestSystem(c);
+		c1S1Mapper.attachComponent(c.createEntity(), new C1S1());
+		system.doFullCheck(C1S1.class, 1, 0, 0);
+		system.checkIfEmpty();
+	}
+
+	@Test
+	public final void testBatchListeners() {
+		Controller c = new Controller();
+		S5 system = new S5(c);
+		EventCountTestSystem counter = new EventCountTestSystem(c);
+		Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+		Mapper<C2S1> c2S1Mapper = c.getMapper(C2S1.class);
+		Mapper<C1S2> c1S2Mapper = c.getMapper(C1S2.class);
+		Entity[] entities = new Entity[100];
+		try(MapperSpace ms = c.startMapperSpace()) {
+			for(int i = 0; i < entities.length; i++) {
+				entities[i] = c.createEntity();
+				c1S1Mapper.attachComponent(entities[i], new C1S1());
+				c2S1Mapper.attachComponent(entities[i], new C2S1());
+			}
+		}
+		assertEquals("Batch listener should be run once per MapperSpace", 1, system.newBatches.size());
+		assertEquals("Batch listener should receive all the Components", entities.length, system.newBatches.get(0).size());
+		assertFalse("Batch listener should be run after the attachments", system.unattached);
+		assertEquals("Batch listener should receive Components of all classes", 2 * entities.length, system.anyCount.get());
+		counter.doFullCheck(C1S1.class, entities.length, 0, 0);
+
+		c1S2Mapper.attachComponent(entities[0], new C1S2());
+		try(MapperSpace ms = c.startMapperSpace()) {
+			for(Entity entity : entities) {
+				c2S1Mapper.updateComponent(c2S1Mapper.get(entity), () -> {});
+				c1S1Mapper.updateComponent(c1S1Mapper.get(entity), () -> {});
+			}
+		}
+		assertEquals("Batch listener should only run for its own event", 1, system.newBatches.size());
+		assertEquals("Batch listener should be run once per MapperSpace", 1, system.updatedBatches.size());
+		assertEquals("Batch listener should receive the Components accepted by the filters", entities.length - 1, system.updatedBatches.get(0).size());
+		for(C2S1 component : system.updatedBatches.get(0))
+			assertNotSame("Filtered out Component should not be given", entities[0], component.getEntity());
+		assertEquals("Components should not stay read locked", 0, c1S1Mapper.get(entities[1]).getLock().getReadLockCount());
+
+		c1S1Mapper.updateComponent(c1S1Mapper.get(entities[0]), () -> {});
+		assertEquals("Batch listener should not be run without matching Components", 1, system.updatedBatches.size());
+	}
+
+	@Test
+	public final void testCoalescedUpdates() {
+		Controller c = new Controller();
+		S5 batchSystem = new S5(c);
+		S6 system = new S6(c);
+		EventCountTestSystem counter = new EventCountTestSystem(c);
+		Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+		C1S1 c1S1 = new C1S1();
+		c1S1Mapper.attachComponent(c.createEntity(), c1S1);
+		try(MapperSpace ms = c.startMapperSpace()) {
+			for(int i = 0; i < 10; i++)
+				c1S1Mapper.updateComponent(c1S1, () -> {});
+		}
+		counter.doFullCheck(C1S1.class, 1, 1, 0);
+		assertEquals("Listener opting out should be run for each update", 10, system.everyUpdateCount.get());
+		assertEquals("Batch listener should receive the attachment and a single update", 2, batchSystem.anyCount.get());
+
+		try(MapperSpace ms = c.startMapperSpace()) {
+			c1S1Mapper.updateComponent(c1S1, () -> {});
+			c1S1Mapper.updateComponent(c1S1, () -> {});
+			c1S1Mapper.detachComponent(c1S1);
+		}
+		counter.doFullCheck(C1S1.class, 0, 0, 1);
+		assertEquals("Updates of a detached Component should be dropped", 10, system.everyUpdateCount.get());
+		assertEquals("Batch listener should only receive the detachment", 3, batchSystem.anyCount.get());
+	}
+
+	@Test(timeout=10000)
+	public final void testDeferredListeners() {
+		Controller c = new Controller();
+		S5 batchSystem = new S5(c);
+		S6 system = new S6(c);
+		EventCountTestSystem counter = new EventCountTestSystem(c);
+		Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+		Entity ent = c.createEntity();
+		C1S1 c1S1 = new C1S1();
+		c.setDeferredListeners(true);
+		assertTrue("Listeners should be deferred", c.isDeferredListeners());
+
+		c1S1Mapper.attachComponent(ent, c1S1);
+		for(int i = 0; i < 3; i++)
+			c1S1Mapper.updateComponent(c1S1, () -> {});
+		assertSame("Attachments should be done immediately", c1S1, c1S1Mapper.getOptimistic(ent));
+		counter.checkIfEmpty();
+		assertEquals("Listeners should wait for the flush", 0, batchSystem.anyCount.get());
+
+		c.flush();
+		counter.doFullCheck(C1S1.class, 1, 1, 0);
+		assertEquals("Listener opting out should be run for each update", 3, system.everyUpdateCount.get());
+		assertEquals("Batch listener should receive the attachment and a single update", 2, batchSystem.anyCount.get());
+		c.flush();
+		counter.checkIfEmpty();
+
+		c1S1Mapper.updateComponent(c1S1, () -> {});
+		c1S1Mapper.detachComponent(ent);
+		c.flush();
+		counter.doFullCheck(C1S1.class, 0, 0, 1);
+		assertEquals("Updates of a detached Component should be dropped", 3, system.everyUpdateCount.get());
+
+		c1S1Mapper.attachComponent(ent, new C1S1());
+		c.setDeferredListeners(false);
+		counter.doFullCheck(C1S1.class, 1, 0, 0);
+		c1S1Mapper.attachComponent(c.createEntity(), new C1S1());
+		counter.doFullCheck(C1S1.class, 1, 0, 0);
+	}
+
+	@Test(timeout=10000)
+	public final void testCloseAsync() throws Exception {
+		Controller c = new Controller();
+		S7 system = new S7(c);
+		EventCountTestSystem counter = new EventCountTestSystem(c);
+		Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+		Mapper<C1S2> c1S2Mapper = c.getMapper(C1S2.class);
+		Entity ent = c.createEntity();
+
+		MapperSpace ms = c.startMapperSpace();
+		c1S1Mapper.attachComponent(ent, new C1S1());
+		c1S2Mapper.attachComponent(ent, new C1S2());
+		CompletableFuture<Void> future = ms.closeAsync();
+		assertNotNull("Attachments should be done when closeAsync returns", c1S2Mapper.getOptimistic(ent));
+		assertFalse("Listeners should still be running", future.isDone());
+		try(MapperSpace ms2 = c.startMapperSpace()) {
+			assertFalse("A new MapperSpace should be started", ms2.toString().startsWith("Already"));
+		}
+
+		system.gate.countDown();
+		future.get();
+		counter.doFullCheck(C1S1.class, 1, 0, 0);
+		counter.doFullCheck(C1S2.class, 1, 0, 0);
+		counter.checkIfEmpty();
+
+		try(MapperSpace ms2 = c.startMapperSpace()) {
+			assertTrue("Nested MapperSpace should complete immediately", c.startMapperSpace().closeAsync().isDone());
+		}
+	}
+
+	@Test(timeout=10000)
+	public final void testCloseAsyncWithResources() throws Exception {
+		Controller c = new Controller();
+		EventCountTestSystem counter = new EventCountTestSystem(c);
+		Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+		Entity ent1 = c.createEntity();
+		Entity ent2 = c.createEntity();
+
+		MapperSpace ms2;
+		try(MapperSpace ms = c.startMapperSpace()) {
+			c1S1Mapper.attachComponent(ent1, new C1S1());
+			ms.closeAsync().get();
+			assertTrue("Closing again should have no effect", ms.closeAsync().isDone());
+			ms2 = c.startMapperSpace();
+			c1S1Mapper.attachComponent(ent2, new C1S1());
+		}
+		assertNotNull("The first MapperSpace should be closed", c1S1Mapper.getOptimistic(ent1));
+		assertNull("The second MapperSpace should not be closed by the first one", c1S1Mapper.getOptimistic(ent2));
+		ms2.close();
+		assertNotNull("The second MapperSpace should be closed", c1S1Mapper.getOptimistic(ent2));
+		counter.doFullCheck(C1S1.class, 2, 0, 0);
+		counter.checkIfEmpty();
+	}
+
+	@Test(timeout=10000)
+	public final void testCloseAsyncFailure() throws InterruptedException {
+		Controller c = new Controller();
+		new S3(c);
+		Entity ent = c.createEntity();
+		MapperSpace ms = c.startMapperSpace();
+		c.getMapper(C1S1.class).attachComponent(ent, new C1S1());
+		c.getMapper(C4S1.class).attachComponent(ent, new C4S1());
+		try {
+			ms.closeAsync().get();
+			fail("Failure of a listener should be reported");
+		} catch (ExecutionException e) {
+			assertTrue("Failure of a listener should be reported", e.getCause() instanceof ControllerException);
+		}
+	}
+
+	@Test(timeout=10000)
+	public final void testExecutionStrategies() {
+		ExecutionStrategy[] strategies = {
+				ExecutionStrategy.inline(),
+				ExecutionStrategy.boundedPool(1),
+				ExecutionStrategy.virtualThreads(),
+				ExecutionStrategy.cachedPool(),
+				ExecutionStrategy.ringBuffer(16, 2),
+				Executors::newCachedThreadPool
+		};
+		for(ExecutionStrategy strategy : strategies) {
+			Controller c = new Controller(strategy);
+			new S8(c);
+			EventCountTestSystem counter = new EventCountTestSystem(c);
+			Mapper<C2S1> c2S1Mapper = c.getMapper(C2S1.class);
+			try(MapperSpace ms = c.startMapperSpace()) {
+				for(int i = 0; i < 10; i++)
+					c2S1Mapper.attachComponent(c.createEntity(), new C2S1());
+			}
+			counter.doFullCheck(C2S1.class, 10, 0, 0);
+			counter.doFullCheck(C1S2.class, 10, 0, 0);
+			counter.checkIfEmpty();
+			c.close();
+		}
+	}
+
+	@Test(expected = ControllerException.class)
+	public final void testNullExecutorService() {
+		new Controller((ExecutorService) null);
+	}
+
+	@Test(timeout=10000)
+	public final void testRunsAfter() {
+		Controller c = new Controller();
+		List<String> log = Collections.synchronizedList(new ArrayList<>());
+		new SecondSystem(c, log);
+		EventCountTestSystem counter = new EventCountTestSystem(c);
+		new FirstSystem(c, log);
+		Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+		try(MapperSpace ms = c.startMapperSpace()) {
+			for(int i = 0; i < 10; i++)
+				c1S1Mapper.attachComponent(c.createEntity(), new C1S1());
+		}
+		assertEquals("All the listeners should have run", 20, log.size());
+		for(int i = 0; i < 10; i++)
+			assertEquals("First System should run before", "first", log.get(i));
+		counter.doFullCheck(C1S1.class, 10, 0, 0);
+		counter.checkIfEmpty();
+	}
+
+	@Test
+	public final void testRunsAfterCycle() {
+		Controller c = new Controller();
+		try {
+			new CyclicSystem(c);
+			fail("A cyclic order should be refused");
+		} catch (ControllerException e) {
+			assertTrue("The cycle should be reported", e.getMessage().contains(CyclicSystem.Other.class.getName()));
+		}
+		assertEquals("The System should not be registered", 0, c.getNumberOfSystems());
+	}
+
+	@Test(timeout=10000)
+	public final void testRunsAfterInstanceCycle() {
+		Controller c = new Controller();
+		new CyclicSystem.Last(c);
+		try {
+			new CyclicSystem.OtherLast(c);
+			fail("Two Systems running after all the others should be refused");
+		} catch (ControllerException e) {
+			assertTrue("The cycle should be reported", e.getMessage().contains(CyclicSystem.OtherLast.class.getName()));
+		}
+		assertEquals("The System should not be registered", 1, c.getNumberOfSystems());
+
+		List<String> log = Collections.synchronizedList(new ArrayList<>());
+		new SecondSystem(c, log);
+		try {
+			new CyclicSystem.FirstAfterSecond(c, log);
+			fail("A subclass of a predecessor running after its successor should be refused");
+		} catch (ControllerException e) {
+			assertTrue("The cycle should be reported", e.getMessage().contains(CyclicSystem.FirstAfterSecond.class.getName()));
+		}
+		assertEquals("The System should not be registered", 2, c.getNumberOfSystems());
+		c.getMapper(C1S1.class).attachComponent(c.createEntity(), new C1S1());
+		assertEquals("The listeners of the refused System should not be added", Collections.singletonList("second"), log);
+	}
+
+	@Test(timeout=10000)
+	public final void testRunsSerially() throws Exception {
+		for(ExecutionStrategy strategy : new ExecutionStrategy[]{ExecutionStrategy.cachedPool(), ExecutionStrategy.boundedPool(2)}) {
+			Controller c = new Controller(strategy);
+			SerialSystem system = new SerialSystem(c);
+			EventCountTestSystem counter = new EventCountTestSystem(c);
+			Mapper<C2S1> c2S1Mapper = c.getMapper(C2S1.class);
+			try(MapperSpace ms = c.startMapperSpace()) {
+				for(int i = 0; i < 20; i++)
+					c2S1Mapper.attachComponent(c.createEntity(), new C2S1());
+			}
+			MapperSpace ms = c.startMapperSpace();
+			c2S1Mapper.attachComponent(c.createEntity(), new C2S1());
+			ms.closeAsync().get();
+
+			assertFalse("Listeners of the System should not run concurrently", system.overlap);
+			assertEquals("All the listeners should have run", 21, system.newCount);
+			assertEquals("Cascading listeners should have run", 21, system.cascadeCount);
+			counter.doFullCheck(C2S1.class, 21, 0, 0);
+			counter.doFullCheck(C1S2.class, 21, 0, 0);
+			counter.checkIfEmpty();
+			c.close();
+		}
+	}
+
+	@Test(timeout=10000)
+	public final void testRunsSeriallyCrossTriggering() throws InterruptedException {
+		for(ExecutionStrategy strategy : new ExecutionStrategy[]{ExecutionStrategy.cachedPool(), ExecutionStrategy.boundedPool(2)}) {
+			Controller c = new Controller(strategy);
+			AtomicInteger budget = new AtomicInteger(200);
+			PingSystem ping = new PingSystem(c, budget);
+			PingSystem.Pong pong = new PingSystem.Pong(c, budget);
+			Mapper<C1S1> c1S1Mapper = c.getMapper(C1S1.class);
+			Mapper<C2S1> c2S1Mapper = c.getMapper(C2S1.class);
+			try(MapperSpace ms = c.startMapperSpace()) {
+				for(int i = 0; i < 10; i++) {
+					c1S1Mapper.attachComponent(c.createEntity(), new C1S1());
+					c2S1Mapper.attachComponent(c.createEntity(), new C2S1());
+				}
+			}
+			// Listeners triggered by the mailboxes are not awaited.
+			while(ping.count.get() + pong.count.get() < 220)
+				Thread.sleep(1);
+			assertEquals("All the listeners should have run", 220, ping.count.get() + pong.count.get());
+			c.close();
+		}
+	}
+
+	@Test(timeout=10000)
+	public final void testWorkStealing() {
+		Controller c = new Controller(ExecutionStrategy.workStealing(2));
+		ChainSystem system = new ChainSystem(c, 10);
+		Mapper<C1> c1Mapper = c.getMapper(C1.class);
+		try(MapperSpace ms = c.startMapperSpace()) {
+			for(int i = 0; i < 20; i++)
+				c1Mapper.attachComponent(c.createEntity(), new C1());
+		}
+		assertEquals("All the cascades should have run", 20 * 11, system.count.get());
+		c.close();
+	}
+}
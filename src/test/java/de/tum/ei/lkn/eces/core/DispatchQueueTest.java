@@ -0,0 +1,146 @@
+package de.tum.ei.lkn.eces.core;
+
+import de.tum.ei.lkn.eces.core.mocks.C1;
+import de.tum.ei.lkn.eces.core.mocks.ChainSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for de.tum.ei.lkn.eces.core.DispatchQueue.java.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class DispatchQueueTest {
+	private ExecutorService executorService;
+	private CountDownLatch gate;
+	private CountDownLatch started;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newCachedThreadPool();
+		gate = new CountDownLatch(1);
+		started = new CountDownLatch(1);
+	}
+
+	@After
+	public void tearDown() {
+		gate.countDown();
+		executorService.shutdown();
+	}
+
+	private void blockingJob() {
+		started.countDown();
+		try {
+			gate.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test(timeout=10000)
+	public final void testBlock() throws InterruptedException {
+		DispatchQueue queue = new DispatchQueue(executorService, 1, DispatchQueue.OverflowPolicy.Block);
+		queue.execute(this::blockingJob);
+		started.await();
+		assertEquals("The queue should be full", 1, queue.getDepth());
+
+		CountDownLatch done = new CountDownLatch(1);
+		Thread producer = new Thread(() -> queue.execute(done::countDown));
+		producer.start();
+		while(queue.getBlockedProducers() == 0)
+			Thread.sleep(1);
+		assertEquals("The job should wait for a free slot", 1, done.getCount());
+
+		Thread.sleep(10);
+		gate.countDown();
+		done.await();
+		producer.join();
+		assertEquals("Both jobs should have been dispatched", 2, queue.getDispatchedJobs());
+		assertTrue("The producer should have been blocked", queue.getBlockedTime(TimeUnit.MILLISECONDS) >= 10);
+	}
+
+	@Test(timeout=10000)
+	public final void testCallerRuns() throws InterruptedException {
+		DispatchQueue queue = new DispatchQueue(executorService, 1, DispatchQueue.OverflowPolicy.CallerRuns);
+		queue.execute(this::blockingJob);
+		started.await();
+
+		Thread[] runner = new Thread[1];
+		queue.execute(() -> runner[0] = Thread.currentThread());
+		assertSame("The job should run in the submitting thread", Thread.currentThread(), runner[0]);
+		assertEquals("The job should be counted", 1, queue.getCallerRunJobs());
+	}
+
+	@Test(timeout=10000)
+	public final void testNestedCallerRuns() throws InterruptedException {
+		ExecutorService pool = ExecutionStrategy.boundedPool(1).createExecutorService();
+		DispatchQueue queue = new DispatchQueue(pool, 2, DispatchQueue.OverflowPolicy.Block);
+		CountDownLatch nested = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		queue.execute(() -> {
+			// The only thread of the pool is busy: the pool runs the job here.
+			queue.execute(nested::countDown);
+			new Thread(() -> queue.execute(this::blockingJob)).start();
+			try {
+				started.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			// The queue is full and this thread still runs a dispatched job.
+			queue.execute(done::countDown);
+		});
+		nested.await();
+		done.await();
+		assertEquals("The last job should run in the submitting thread", 1, queue.getCallerRunJobs());
+		gate.countDown();
+		pool.shutdown();
+	}
+
+	@Test(timeout=10000)
+	public final void testReject() throws InterruptedException {
+		DispatchQueue queue = new DispatchQueue(executorService, 1, DispatchQueue.OverflowPolicy.Reject);
+		queue.execute(this::blockingJob);
+		started.await();
+		try {
+			queue.execute(() -> fail("Rejected job should not run"));
+			fail("The job should be rejected");
+		} catch (RejectedExecutionException e) {
+			assertEquals("The job should be counted", 1, queue.getRejectedJobs());
+		}
+
+		gate.countDown();
+		while(queue.getDepth() > 0)
+			Thread.sleep(1);
+		CountDownLatch done = new CountDownLatch(1);
+		queue.execute(done::countDown);
+		done.await();
+	}
+
+	@Test(timeout=10000)
+	public final void testControllerCascades() {
+		Controller controller = new Controller(ExecutionStrategy.bounded(ExecutionStrategy.cachedPool(), 2, DispatchQueue.OverflowPolicy.Block));
+		ChainSystem system = new ChainSystem(controller, 5);
+		Mapper<C1> c1Mapper = controller.getMapper(C1.class);
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			for(int i = 0; i < 10; i++)
+				c1Mapper.attachComponent(controller.createEntity(), new C1());
+		}
+		assertEquals("All the cascades should have run", 10 * 6, system.count.get());
+		assertNotNull("The Controller should expose its queue", controller.getDispatchQueue());
+		// Slots are freed right after the jobs complete.
+		while(controller.getDispatchQueue().getDepth() > 0)
+			Thread.yield();
+		assertNull("Controllers are not bounded by default", new Controller().getDispatchQueue());
+		controller.close();
+	}
+}
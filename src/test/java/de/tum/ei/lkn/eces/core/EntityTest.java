@@ -85,6 +85,11 @@ public class EntityTest {
 		}
 		assertSame("There should be c1 at e1", e1.getComponent(0, 0), c1);
 		assertSame("There should be c2 at e1", e1.getComponent(1, 0), c2);
+
+		// Nothing grows: the Components are kept.
+		e1.extend(1, 2, 2);
+		assertSame("There should be c1 at e1", e1.getComponent(0, 0), c1);
+		assertSame("There should be c2 at e1", e1.getComponent(1, 0), c2);
 	}
 
 	@Test
@@ -128,4 +133,59 @@ public class EntityTest {
 
 		assertEquals("toString output is wrong", 0, e1.toString().compareTo("Entity: Component Component | Component |"));
 	}
+
+	@Test
+	public void testCanHold() {
+		assertFalse("e1 has no data structure", e1.canHold(0, 0));
+		assertFalse("e2 has no Component slots yet", e2.canHold(1, 0));
+		e2.extend(1, 2, 2);
+		assertTrue("e2 should hold Component (1, 1)", e2.canHold(1, 1));
+		assertFalse("e2 should not hold Component (1, 2)", e2.canHold(1, 2));
+		assertFalse("e2 should not hold Component (2, 0)", e2.canHold(2, 0));
+
+		Entity e3 = new Entity(2, new int[]{2, 0, 1}, 0);
+		assertTrue("e3 should hold Component (0, 1)", e3.canHold(0, 1));
+		assertFalse("e3 should not hold Component (1, 0)", e3.canHold(1, 0));
+		assertTrue("e3 should hold Component (2, 0)", e3.canHold(2, 0));
+	}
+
+	@Test
+	public void testReadsDuringExtend() throws InterruptedException {
+		Component component = new Component() {};
+		e2.extend(0, 2, 1);
+		e2.setComponent(component, 0, 0);
+
+		final boolean[] lost = {false};
+		Thread reader = new Thread(() -> {
+			for(int i = 0; i < 100000; i++)
+				if(e2.getComponent(0, 0) != component)
+					lost[0] = true;
+		});
+		reader.start();
+		for(int i = 2; i < 1000; i++)
+			e2.extend(1, i, i);
+		reader.join();
+
+		assertFalse("Component should stay visible while the Entity is extended", lost[0]);
+		assertSame("Component should have been kept", component, e2.getComponent(0, 0));
+	}
+
+	@Test
+	public void testSignature() {
+		assertFalse("e1 should have an empty signature", e1.hasSignatureBit(3));
+		e1.setSignatureBit(3);
+		e1.setSignatureBit(70);
+		assertTrue("Bit 3 should be set", e1.hasSignatureBit(3));
+		assertTrue("Bit 70 should be set", e1.hasSignatureBit(70));
+		assertFalse("Bit 4 should not be set", e1.hasSignatureBit(4));
+
+		long[] required = {1L << 3, 1L << 6};
+		assertTrue("Signature should match", e1.matchesSignature(required, new long[]{1L << 4}));
+		assertFalse("Excluded bit 3 should reject the signature", e1.matchesSignature(required, new long[]{1L << 3}));
+		assertFalse("Required bit 130 should reject the signature", e1.matchesSignature(new long[]{0, 0, 1L << 2}, new long[0]));
+
+		e1.clearSignatureBit(70);
+		assertFalse("Bit 70 should have been cleared", e1.hasSignatureBit(70));
+		assertFalse("Signature should not match anymore", e1.matchesSignature(required, new long[0]));
+	}
 }
@@ -4,6 +4,10 @@ import de.tum.ei.lkn.eces.core.exceptions.ControllerException;
 import de.tum.ei.lkn.eces.core.mocks.*;
 import org.junit.Test;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 /**
@@ -77,4 +81,55 @@ public class ListenerTest {
 
 		fail("A ControllerException should be thrown");
 	}
-}
\ No newline at end of file
+
+	@Test
+	public final void testGeneratedInvoker() throws Throwable {
+		Method method = RecordingListener.class.getMethod("listen", C1S1.class);
+		Listener.Invoker invoker = Listener.createInvoker(method);
+		RecordingListener reflected = new RecordingListener();
+		RecordingListener generated = new RecordingListener();
+
+		List<C1S1> components = new ArrayList<>();
+		for(int i = 0; i < 10; i++)
+			components.add(new C1S1());
+		for(C1S1 component : components) {
+			method.invoke(reflected, component);
+			invoker.invoke(generated, component);
+		}
+		assertEquals("Invoker and reflection should give the same calls", reflected.received, generated.received);
+		assertEquals("All the calls should have been received", components, generated.received);
+
+		/* The generated invoker calls the method directly: neither
+		 * reflection nor the fallback lambdas of the Listener are on the
+		 * stack. */
+		String caller = generated.caller.getClassName();
+		assertFalse("Method should not be called by reflection (" + caller + ")", caller.startsWith("java.lang.reflect.") || caller.startsWith("jdk.internal.reflect.") || caller.startsWith("sun.reflect."));
+		assertFalse("Method should not be called by a fallback invoker (" + caller + ")", caller.equals(Listener.class.getName()));
+	}
+
+	public static class RecordingListener {
+		public final List<C1S1> received = new ArrayList<>();
+		public StackTraceElement caller;
+
+		public void listen(C1S1 component) {
+			received.add(component);
+			caller = new Throwable().getStackTrace()[1];
+		}
+	}
+
+	@Test
+	public final void testInvokerOfNonPublicClass() throws Throwable {
+		NonPublicListener object = new NonPublicListener();
+		Listener.Invoker invoker = Listener.createInvoker(NonPublicListener.class.getMethod("listen", C1S1.class));
+		invoker.invoke(object, new C1S1());
+		assertEquals("Listener method should have been called", 1, object.count);
+	}
+
+	private static class NonPublicListener {
+		private int count = 0;
+
+		public void listen(C1S1 component) {
+			count++;
+		}
+	}
+}
@@ -2,11 +2,19 @@ package de.tum.ei.lkn.eces.core;
 
 import de.tum.ei.lkn.eces.core.exceptions.MapperException;
 import de.tum.ei.lkn.eces.core.mocks.*;
+import de.tum.ei.lkn.eces.core.util.EventCountTestSystem;
 import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 
 /**
@@ -25,6 +33,8 @@ public class MapperTest {
 		controller = new Controller();
 
 		new S1(controller);
+		// Listeners to all the Components, so that listener jobs are created.
+		new EventCountTestSystem(controller);
 
 		c1Mapper = controller.getMapper(C1.class);
 		c2Mapper = controller.getMapper(C2.class);
@@ -384,6 +394,44 @@ public class MapperTest {
 		assertEquals("Component update has to count up twice after the MapperSpace", 2, c1.getCount());
 	}
 
+	@Test
+	public final void testNoListenerJobs() {
+		Controller controller = new Controller();
+		Mapper<C1S1> c1S1Mapper = controller.getMapper(C1S1.class);
+		Mapper<C1S2> c1S2Mapper = controller.getMapper(C1S2.class);
+		Entity ent = controller.createEntity();
+		C1S1 c1S1 = new C1S1();
+		c1S1Mapper.attachComponent(ent, c1S1);
+
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			c1S1Mapper.updateComponent(c1S1, () -> {});
+			c1S2Mapper.attachComponent(ent, new C1S2());
+			c1S1Mapper.detachComponent(ent);
+			MapperData data = controller.getMapperData();
+			assertEquals("No job should be created without attachment listener", 0, data.getAttachmentListeners().size());
+			assertEquals("No job should be created without update listener", 0, data.getUpdateListeners().size());
+			assertEquals("No job should be created without detachment listener", 0, data.getDetachmentListeners().size());
+			assertEquals("The attachment job should still be created", 1, data.getEntityAttachmentJobs().size());
+			assertEquals("The changes should not be recorded", 0, data.getChangedComponents(ComponentStatus.Updated).size());
+			assertEquals("The changes should not be recorded", 0, data.getChangedComponents(ComponentStatus.Destroyed).size());
+		}
+		assertFalse("The detachment should be done", c1S1Mapper.isIn(ent));
+		assertTrue("The attachment should be done", c1S2Mapper.isIn(ent));
+
+		// Deferred listeners need the changes.
+		controller.setDeferredListeners(true);
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			c1S2Mapper.updateComponent(c1S2Mapper.get(ent), () -> {});
+			assertEquals("The changes should be recorded", 1, controller.getMapperData().getChangedComponents(ComponentStatus.Updated).size());
+		}
+		controller.setDeferredListeners(false);
+
+		// Listeners registered later are taken into account.
+		EventCountTestSystem counter = new EventCountTestSystem(controller);
+		c1S1Mapper.attachComponent(ent, new C1S1());
+		counter.doFullCheck(C1S1.class, 1, 0, 0);
+	}
+
 	@Test
 	public final void testReadLockException() {
 		Controller controller = new Controller();
@@ -525,4 +573,121 @@ public class MapperTest {
 			fail("Error while producing JSON Object");
 		}
 	}
+
+	@Test
+	public final void testForEach() {
+		Entity ent1 = controller.createEntity();
+		Entity ent2 = controller.createEntity();
+		Entity ent3 = controller.createEntity();
+		C1 c1 = new C1();
+		C2 c2 = new C2();
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			c1Mapper.attachComponent(ent1, c1);
+			c2Mapper.attachComponent(ent2, c2);
+		}
+
+		List<C1> visited = new ArrayList<>();
+		c1Mapper.forEach(visited::add);
+		assertEquals("C1 Mapper should visit both Components", 2, visited.size());
+		assertTrue("C1 Mapper should visit c1", visited.contains(c1));
+		assertTrue("C1 Mapper should visit c2", visited.contains(c2));
+
+		List<C2> visited2 = new ArrayList<>();
+		c2Mapper.forEach(visited2::add);
+		assertEquals("C2 Mapper should only visit c2", 1, visited2.size());
+		assertSame("C2 Mapper should only visit c2", c2, visited2.get(0));
+
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			c1Mapper.forEach(c -> {});
+			MapperData data = controller.getMapperData();
+			assertEquals("The Mapper registers " + data.getReadLocks().size() + " read locks (should be 2)", 2, data.getReadLocks().size());
+		}
+
+		c1Mapper.detachComponent(ent1);
+		visited.clear();
+		c1Mapper.forEach(visited::add);
+		assertEquals("Detached Component should not be visited", 1, visited.size());
+		assertNull("ent3 has no Component", c1Mapper.getOptimistic(ent3));
+	}
+
+	@Test
+	public final void testStreamAndCount() {
+		assertEquals("No Component should be counted", 0, c1Mapper.count());
+		for(int i = 0; i < 10; i++)
+			c1Mapper.attachComponent(controller.createEntity(), new C1());
+		for(int i = 0; i < 5; i++)
+			c2Mapper.attachComponent(controller.createEntity(), new C2());
+
+		assertEquals("Wrong count for C1 Mapper", 15, c1Mapper.count());
+		assertEquals("Wrong count for C2 Mapper", 5, c2Mapper.count());
+		assertEquals("Wrong stream size for C1 Mapper", 15, c1Mapper.stream().count());
+		assertEquals("Wrong stream size for C2 Mapper", 5, c2Mapper.stream().filter(c -> c.getEntity() != null).count());
+	}
+
+	@Test
+	public final void testSparseStorage() {
+		Mapper<C5S1> c5S1Mapper = controller.getMapper(C5S1.class);
+		Entity[] entities = new Entity[10];
+		C5S1[] components = new C5S1[10];
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			for(int i = 0; i < 10; i++) {
+				entities[i] = controller.createEntity();
+				components[i] = new C5S1();
+				c5S1Mapper.attachComponent(entities[i], components[i]);
+			}
+		}
+
+		assertEquals("Wrong count", 10, c5S1Mapper.count());
+		assertNull("Sparse Components should not be stored in Archetypes", entities[0].getArchetype());
+		assertSame("Entity view should still be available", components[3], c5S1Mapper.get(entities[3]));
+
+		c5S1Mapper.detachComponent(entities[3]);
+		assertEquals("Wrong count", 9, c5S1Mapper.count());
+		assertNull("Component should have been detached", c5S1Mapper.get(entities[3]));
+
+		List<C5S1> visited = new ArrayList<>();
+		c5S1Mapper.forEach(visited::add);
+		assertEquals("Wrong number of visited Components", 9, visited.size());
+		assertFalse("Detached Component should not be visited", visited.contains(components[3]));
+
+		C1 c1 = new C1();
+		c1Mapper.attachComponent(entities[0], c1);
+		assertNotNull("Other Components should still be stored in Archetypes", entities[0].getArchetype());
+		assertEquals("Sparse Component should not be part of the Archetype", 1, entities[0].getArchetype().getSignature().cardinality());
+	}
+
+	@Test
+	public final void testSignatureFollowsAttachments() {
+		Controller controller = new Controller();
+		Mapper<C1S1> c1S1Mapper = controller.getMapper(C1S1.class);
+		Entity ent = controller.createEntity();
+		int index = controller.getStorageIndex(0, 0);
+
+		c1S1Mapper.attachComponent(ent, new C1S1());
+		assertTrue("Signature should contain the attached Component", ent.hasSignatureBit(index));
+		c1S1Mapper.detachComponent(ent);
+		assertFalse("Signature should not contain the detached Component", ent.hasSignatureBit(index));
+	}
+
+	@Test
+	public final void testParallelForEach() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		controller.setForkJoinPool(pool);
+		for(int i = 0; i < 1000; i++)
+			c1Mapper.attachComponent(controller.createEntity(), new C1());
+		for(int i = 0; i < 100; i++)
+			c2Mapper.attachComponent(controller.createEntity(), new C2());
+
+		Set<C1> visited = ConcurrentHashMap.newKeySet();
+		c1Mapper.parallelForEach(c -> {
+			assertTrue("Component should be read locked", c.getLock().getReadHoldCount() > 0);
+			visited.add(c);
+		});
+		assertEquals("All the Components should have been visited", 1100, visited.size());
+
+		AtomicInteger count = new AtomicInteger();
+		controller.parallelForEach(C2.class, c -> count.incrementAndGet());
+		assertEquals("Only the C2 Components should have been visited", 100, count.get());
+		pool.shutdown();
+	}
 }
@@ -0,0 +1,93 @@
+package de.tum.ei.lkn.eces.core;
+
+import de.tum.ei.lkn.eces.core.mocks.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for de.tum.ei.lkn.eces.core.Query.java.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class QueryTest {
+	private Controller controller;
+	private Mapper<C1S1> c1S1Mapper;
+	private Mapper<C2S1> c2S1Mapper;
+	private Mapper<C3S1> c3S1Mapper;
+	private Mapper<C1S2> c1S2Mapper;
+	private Mapper<C5S1> c5S1Mapper;
+	private Entity ent1;
+	private Entity ent2;
+	private Entity ent3;
+
+	@Before
+	public void setup() {
+		controller = new Controller();
+		c1S1Mapper = controller.getMapper(C1S1.class);
+		c2S1Mapper = controller.getMapper(C2S1.class);
+		c3S1Mapper = controller.getMapper(C3S1.class);
+		c5S1Mapper = controller.getMapper(C5S1.class);
+		c1S2Mapper = controller.getMapper(C1S2.class);
+		ent1 = controller.createEntity();
+		ent2 = controller.createEntity();
+		ent3 = controller.createEntity();
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			c1S1Mapper.attachComponent(ent1, new C1S1());
+			c2S1Mapper.attachComponent(ent1, new C2S1());
+			c5S1Mapper.attachComponent(ent1, new C5S1());
+			c1S1Mapper.attachComponent(ent2, new C1S1());
+			c3S1Mapper.attachComponent(ent2, new C3S1());
+			c1S2Mapper.attachComponent(ent2, new C1S2());
+			c1S1Mapper.attachComponent(ent3, new C1S1());
+		}
+	}
+
+	@Test
+	public final void testQueryWithout() {
+		Set<Entity> visited = new HashSet<>();
+		controller.query(C1S1.class, C2S1.class).without(C1S2.class).forEach((e, c1, c2) -> {
+			assertSame("First Component should belong to the Entity", c1S1Mapper.getOptimistic(e), c1);
+			assertSame("Second Component should belong to the Entity", c2S1Mapper.getOptimistic(e), c2);
+			assertTrue("Components should be read locked", c1.getLock().getReadHoldCount() > 0);
+			visited.add(e);
+		});
+		assertEquals("Only ent1 should match", 1, visited.size());
+		assertTrue("Only ent1 should match", visited.contains(ent1));
+
+		visited.clear();
+		controller.query(C1S1.class).forEach((e, c1) -> visited.add(e));
+		assertEquals("All the Entities should match", 3, visited.size());
+
+		visited.clear();
+		controller.query(C1S1.class, C3S1.class).forEach((e, c1, c3) -> visited.add(e));
+		assertEquals("Only ent2 should carry the subclass", 1, visited.size());
+		assertTrue("Only ent2 should carry the subclass", visited.contains(ent2));
+
+		visited.clear();
+		controller.query(C2S1.class).without(C3S1.class).forEach((e, c2) -> visited.add(e));
+		assertEquals("Only ent1 should carry a C2S1 which is not a C3S1", 1, visited.size());
+		assertTrue("Only ent1 should carry a C2S1 which is not a C3S1", visited.contains(ent1));
+	}
+
+	@Test
+	public final void testQuerySparse() {
+		Set<Entity> visited = new HashSet<>();
+		controller.query(C1S1.class, C2S1.class, C5S1.class).forEach((e, c1, c2, c5) -> {
+			assertSame("Sparse Component should belong to the Entity", c5S1Mapper.getOptimistic(e), c5);
+			visited.add(e);
+		});
+		assertEquals("Only ent1 should match", 1, visited.size());
+		assertTrue("Only ent1 should match", visited.contains(ent1));
+
+		visited.clear();
+		controller.query(C1S1.class).without(C5S1.class).forEach((e, c1) -> visited.add(e));
+		assertEquals("ent2 and ent3 should match", 2, visited.size());
+		assertFalse("ent1 should not match", visited.contains(ent1));
+	}
+}
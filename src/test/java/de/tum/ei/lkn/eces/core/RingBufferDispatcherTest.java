@@ -0,0 +1,68 @@
+package de.tum.ei.lkn.eces.core;
+
+import de.tum.ei.lkn.eces.core.mocks.C1;
+import de.tum.ei.lkn.eces.core.mocks.C2S1;
+import de.tum.ei.lkn.eces.core.mocks.ChainSystem;
+import de.tum.ei.lkn.eces.core.mocks.SerialSystem;
+import org.junit.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for de.tum.ei.lkn.eces.core.RingBufferDispatcher.java.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class RingBufferDispatcherTest {
+	@Test(timeout=10000)
+	public final void testSlotReuse() throws InterruptedException {
+		RingBufferDispatcher ring = new RingBufferDispatcher(8, 2);
+		AtomicInteger count = new AtomicInteger();
+		for(int round = 0; round < 3; round++) {
+			RingBufferDispatcher.Barrier barrier = ring.openBarrier();
+			// More jobs than slots: the producer has to help the workers.
+			for(int i = 0; i < 100; i++)
+				ring.publish(count::incrementAndGet, barrier);
+			ring.await(barrier);
+			assertEquals("All the jobs should have run", (round + 1) * 100, count.get());
+			assertSame("Barriers should be recycled", barrier, ring.openBarrier());
+			ring.await(barrier);
+		}
+		assertEquals("The ring should be empty", 0, ring.getBacklog());
+
+		ring.shutdown();
+		assertTrue("The workers should stop", ring.awaitTermination(5, TimeUnit.SECONDS));
+		try {
+			ring.execute(count::incrementAndGet);
+			fail("Jobs should be rejected after shutdown");
+		} catch (RejectedExecutionException e) {
+			// Expected.
+		}
+	}
+
+	@Test(timeout=10000)
+	public final void testControllerCascades() {
+		// A single worker: cascades only complete if waiting threads help.
+		Controller controller = new Controller(ExecutionStrategy.ringBuffer(4, 1));
+		ChainSystem system = new ChainSystem(controller, 5);
+		SerialSystem serialSystem = new SerialSystem(controller);
+		Mapper<C1> c1Mapper = controller.getMapper(C1.class);
+		Mapper<C2S1> c2S1Mapper = controller.getMapper(C2S1.class);
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			for(int i = 0; i < 10; i++) {
+				c1Mapper.attachComponent(controller.createEntity(), new C1());
+				c2S1Mapper.attachComponent(controller.createEntity(), new C2S1());
+			}
+		}
+		assertEquals("All the cascades should have run", 10 * 6, system.count.get());
+		assertEquals("All the serial listeners should have run", 10, serialSystem.newCount);
+		assertEquals("All the serial cascades should have run", 10, serialSystem.cascadeCount);
+		assertFalse("Serial listeners should not overlap", serialSystem.overlap);
+		controller.close();
+	}
+}
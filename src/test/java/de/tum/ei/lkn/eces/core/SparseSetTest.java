@@ -0,0 +1,65 @@
+package de.tum.ei.lkn.eces.core;
+
+import de.tum.ei.lkn.eces.core.exceptions.MapperException;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for de.tum.ei.lkn.eces.core.SparseSet.java.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class SparseSetTest {
+
+	@Test
+	public final void testAddRemove() {
+		SparseSet set = new SparseSet();
+		Entity[] entities = new Entity[100];
+		Component[] components = new Component[100];
+		for(int i = 0; i < 100; i++) {
+			entities[i] = new Entity(i * 1000L);
+			components[i] = new Component();
+			set.add(entities[i], components[i]);
+		}
+		assertEquals("Wrong size", 100, set.size());
+
+		for(int i = 0; i < 100; i += 2)
+			assertSame("Wrong removed Component", components[i], set.remove(entities[i]));
+		assertEquals("Wrong size", 50, set.size());
+		assertNull("Removing twice should return null", set.remove(entities[0]));
+
+		for(int i = 0; i < 100; i++) {
+			if(i % 2 == 0)
+				assertNull("Component should have been removed", set.get(entities[i]));
+			else
+				assertSame("Wrong Component", components[i], set.get(entities[i]));
+		}
+
+		List<Component> dense = set.getComponents();
+		assertEquals("Dense array has wrong size", 50, dense.size());
+		for(int i = 1; i < 100; i += 2)
+			assertTrue("Dense array misses a Component", dense.contains(components[i]));
+	}
+
+	@Test
+	public final void testEntityIdentity() {
+		SparseSet set = new SparseSet();
+		Entity ent = new Entity(1L << 32);
+		Component component = new Component();
+		set.add(ent, component);
+		assertSame("Large IDs should be supported", component, set.get(ent));
+		assertNull("Another Entity with the same ID has no Component", set.get(new Entity(1L << 32)));
+		assertNull("Another Entity with the same ID has no Component", set.remove(new Entity(1L << 32)));
+
+		try {
+			set.add(new Entity(1L << 32), new Component());
+			fail("Two Entities with the same ID should not be stored");
+		} catch(MapperException e) {
+			assertTrue(true);
+		}
+	}
+}
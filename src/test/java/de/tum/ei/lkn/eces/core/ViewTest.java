@@ -0,0 +1,81 @@
+package de.tum.ei.lkn.eces.core;
+
+import de.tum.ei.lkn.eces.core.mocks.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for de.tum.ei.lkn.eces.core.View.java.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class ViewTest {
+	private Controller controller;
+	private Mapper<C1S1> c1S1Mapper;
+	private Mapper<C2S1> c2S1Mapper;
+	private Mapper<C1S2> c1S2Mapper;
+
+	@Before
+	public void setup() {
+		controller = new Controller();
+		c1S1Mapper = controller.getMapper(C1S1.class);
+		c2S1Mapper = controller.getMapper(C2S1.class);
+		c1S2Mapper = controller.getMapper(C1S2.class);
+	}
+
+	@Test
+	public final void testViewFollowsAttachments() {
+		Entity ent1 = controller.createEntity();
+		Entity ent2 = controller.createEntity();
+		try(MapperSpace ms = controller.startMapperSpace()) {
+			c1S1Mapper.attachComponent(ent1, new C1S1());
+			c2S1Mapper.attachComponent(ent1, new C2S1());
+			c1S1Mapper.attachComponent(ent2, new C1S1());
+		}
+
+		View view = controller.registerView(new Filter[]{new HasNotComponentFilter(controller, C1S2.class)}, C1S1.class, C2S1.class);
+		assertEquals("Only ent1 should be in the View", 1, view.size());
+		assertTrue("Only ent1 should be in the View", view.contains(ent1));
+
+		c2S1Mapper.attachComponent(ent2, new C2S1());
+		List<Entity> entities = view.getEntities();
+		assertEquals("ent2 should have joined the View", 2, entities.size());
+		assertSame("Entities should be sorted", ent1, entities.get(0));
+		assertSame("Snapshot should be reused until the View changes", entities, view.getEntities());
+
+		c1S2Mapper.attachComponent(ent1, new C1S2());
+		assertFalse("ent1 should have been filtered out", view.contains(ent1));
+		c1S1Mapper.detachComponent(ent2);
+		assertEquals("The View should be empty", 0, view.getEntities().size());
+
+		controller.unregisterView(view);
+		c1S2Mapper.detachComponent(ent1);
+		assertFalse("An unregistered View should not be updated", view.contains(ent1));
+	}
+
+	@Test
+	public final void testViewFollowsUpdates() {
+		Mapper<C1> c1Mapper = controller.getMapper(C1.class);
+		Entity ent = controller.createEntity();
+		C1 c1 = new C1();
+		c1Mapper.attachComponent(ent, c1);
+		View view = controller.registerView(new Filter[]{new Filter() {
+			@Override
+			public boolean isAccepted(Component component) {
+				return ((C1) component).getCount() > 0;
+			}
+		}}, C1.class);
+		assertEquals("The View should be empty", 0, view.size());
+
+		c1Mapper.updateComponent(c1, c1::countUp);
+		assertTrue("Updated Component should be accepted by the Filter", view.contains(ent));
+
+		controller.destroyEntity(ent);
+		assertFalse("Destroyed Entity should have left the View", view.contains(ent));
+	}
+}
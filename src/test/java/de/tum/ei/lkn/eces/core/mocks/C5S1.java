@@ -0,0 +1,17 @@
+package de.tum.ei.lkn.eces.core.mocks;
+
+import de.tum.ei.lkn.eces.core.Component;
+import de.tum.ei.lkn.eces.core.annotations.ComponentBelongsTo;
+import de.tum.ei.lkn.eces.core.annotations.SparseStorage;
+
+/**
+ * Mock Component stored in a sparse set.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+@ComponentBelongsTo(system = S1.class)
+@SparseStorage
+public class C5S1 extends Component {
+
+}
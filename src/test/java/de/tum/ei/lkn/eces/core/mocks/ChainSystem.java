@@ -0,0 +1,37 @@
+package de.tum.ei.lkn.eces.core.mocks;
+
+import de.tum.ei.lkn.eces.core.ComponentStatus;
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mock System whose listener attaches, to a new Entity, a Component whose
+ * count is one more than the one of the attached Component, up to a given
+ * depth. This creates cascades of listeners.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class ChainSystem extends RootSystem {
+	private final int depth;
+	public final AtomicInteger count = new AtomicInteger();
+
+	public ChainSystem(Controller controller, int depth) {
+		super(controller);
+		this.depth = depth;
+	}
+
+	@ComponentStateIs(State = ComponentStatus.New)
+	public void chain(C1 component) {
+		count.incrementAndGet();
+		if(component.getCount() < depth) {
+			C1 next = new C1();
+			for(int i = 0; i <= component.getCount(); i++)
+				next.countUp();
+			controller.getMapper(C1.class).attachComponent(controller.createEntity(), next);
+		}
+	}
+}
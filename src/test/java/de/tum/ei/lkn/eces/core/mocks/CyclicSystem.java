@@ -0,0 +1,54 @@
+package de.tum.ei.lkn.eces.core.mocks;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.core.annotations.RunsAfter;
+
+import java.util.List;
+
+/**
+ * Mock Systems with cyclic orders.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+@RunsAfter(CyclicSystem.Other.class)
+public class CyclicSystem extends RootSystem {
+	public CyclicSystem(Controller controller) {
+		super(controller);
+	}
+
+	@RunsAfter(CyclicSystem.class)
+	public static class Other extends RootSystem {
+		public Other(Controller controller) {
+			super(controller);
+		}
+	}
+
+	/**
+	 * Two Systems running after all the others.
+	 */
+	@RunsAfter(RootSystem.class)
+	public static class Last extends RootSystem {
+		public Last(Controller controller) {
+			super(controller);
+		}
+	}
+
+	@RunsAfter(RootSystem.class)
+	public static class OtherLast extends RootSystem {
+		public OtherLast(Controller controller) {
+			super(controller);
+		}
+	}
+
+	/**
+	 * FirstSystem running after SecondSystem, which runs after FirstSystem.
+	 */
+	@RunsAfter(SecondSystem.class)
+	public static class FirstAfterSecond extends FirstSystem {
+		public FirstAfterSecond(Controller controller, List<String> log) {
+			super(controller, log);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package de.tum.ei.lkn.eces.core.mocks;
+
+import de.tum.ei.lkn.eces.core.ComponentStatus;
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
+
+import java.util.List;
+
+/**
+ * Mock System logging its attachment events, in parallel.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class FirstSystem extends RootSystem {
+	private final List<String> log;
+
+	public FirstSystem(Controller controller, List<String> log) {
+		super(controller);
+		this.log = log;
+	}
+
+	@ComponentStateIs(State = ComponentStatus.New)
+	public void log(C1S1 component) throws InterruptedException {
+		Thread.sleep(5);
+		log.add("first");
+	}
+}
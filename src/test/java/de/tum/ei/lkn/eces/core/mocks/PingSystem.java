@@ -0,0 +1,59 @@
+package de.tum.ei.lkn.eces.core.mocks;
+
+import de.tum.ei.lkn.eces.core.ComponentStatus;
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Mapper;
+import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
+import de.tum.ei.lkn.eces.core.annotations.RunsSerially;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mock Systems running serially whose listeners trigger each other's
+ * listeners, as long as a shared budget of events is not exhausted.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+@RunsSerially
+public class PingSystem extends RootSystem {
+	public final AtomicInteger count = new AtomicInteger();
+	private final AtomicInteger budget;
+	private final Mapper<C2S1> c2S1Mapper;
+
+	public PingSystem(Controller controller, AtomicInteger budget) {
+		super(controller);
+		this.budget = budget;
+		this.c2S1Mapper = controller.getMapper(C2S1.class);
+	}
+
+	@ComponentStateIs(State = ComponentStatus.New)
+	public void ping(C1S1 component) throws InterruptedException {
+		count.incrementAndGet();
+		Thread.sleep(1);
+		if(budget.decrementAndGet() >= 0)
+			c2S1Mapper.attachComponent(controller.createEntity(), new C2S1());
+	}
+
+	@RunsSerially
+	public static class Pong extends RootSystem {
+		public final AtomicInteger count = new AtomicInteger();
+		private final AtomicInteger budget;
+		private final Mapper<C1S1> c1S1Mapper;
+
+		public Pong(Controller controller, AtomicInteger budget) {
+			super(controller);
+			this.budget = budget;
+			this.c1S1Mapper = controller.getMapper(C1S1.class);
+		}
+
+		@ComponentStateIs(State = ComponentStatus.New)
+		public void pong(C2S1 component) throws InterruptedException {
+			count.incrementAndGet();
+			Thread.sleep(1);
+			if(budget.decrementAndGet() >= 0)
+				c1S1Mapper.attachComponent(controller.createEntity(), new C1S1());
+		}
+	}
+}
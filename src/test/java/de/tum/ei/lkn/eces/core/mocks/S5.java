@@ -0,0 +1,49 @@
+package de.tum.ei.lkn.eces.core.mocks;
+
+import de.tum.ei.lkn.eces.core.Component;
+import de.tum.ei.lkn.eces.core.ComponentStatus;
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
+import de.tum.ei.lkn.eces.core.annotations.HasNotComponent;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mock System with batch listeners.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class S5 extends RootSystem {
+	public final List<List<C1S1>> newBatches = new CopyOnWriteArrayList<>();
+	public final List<Collection<? extends C2S1>> updatedBatches = new CopyOnWriteArrayList<>();
+	public final AtomicInteger anyCount = new AtomicInteger();
+	public volatile boolean unattached = false;
+
+	public S5(Controller controller) {
+		super(controller);
+	}
+
+	@ComponentStateIs(State = ComponentStatus.New)
+	public void batchNew(List<C1S1> components) {
+		for(C1S1 component : components)
+			if(component.getEntity() == null)
+				unattached = true;
+		newBatches.add(components);
+	}
+
+	@ComponentStateIs(State = ComponentStatus.Updated)
+	@HasNotComponent(component = C1S2.class)
+	public void batchUpdated(Collection<? extends C2S1> components) {
+		updatedBatches.add(components);
+	}
+
+	@ComponentStateIs(State = ComponentStatus.Any)
+	public void batchAny(List<Component> components) {
+		anyCount.addAndGet(components.size());
+	}
+}
@@ -0,0 +1,27 @@
+package de.tum.ei.lkn.eces.core.mocks;
+
+import de.tum.ei.lkn.eces.core.ComponentStatus;
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mock System with a listener opting out of the coalescing of updates.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class S6 extends RootSystem {
+	public final AtomicInteger everyUpdateCount = new AtomicInteger();
+
+	public S6(Controller controller) {
+		super(controller);
+	}
+
+	@ComponentStateIs(State = ComponentStatus.Updated, Coalesce = false)
+	public void everyUpdate(C1S1 component) {
+		everyUpdateCount.incrementAndGet();
+	}
+}
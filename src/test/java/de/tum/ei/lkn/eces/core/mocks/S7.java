@@ -0,0 +1,27 @@
+package de.tum.ei.lkn.eces.core.mocks;
+
+import de.tum.ei.lkn.eces.core.ComponentStatus;
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Mock System whose listener waits for a gate to be opened.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class S7 extends RootSystem {
+	public final CountDownLatch gate = new CountDownLatch(1);
+
+	public S7(Controller controller) {
+		super(controller);
+	}
+
+	@ComponentStateIs(State = ComponentStatus.New)
+	public void waitGate(C1S2 component) throws InterruptedException {
+		gate.await();
+	}
+}
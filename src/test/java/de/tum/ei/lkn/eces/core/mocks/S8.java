@@ -0,0 +1,24 @@
+package de.tum.ei.lkn.eces.core.mocks;
+
+import de.tum.ei.lkn.eces.core.ComponentStatus;
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
+
+/**
+ * Mock System whose listener attaches a Component, hence closing a
+ * MapperSpace from a listener.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+public class S8 extends RootSystem {
+	public S8(Controller controller) {
+		super(controller);
+	}
+
+	@ComponentStateIs(State = ComponentStatus.New)
+	public void cascade(C2S1 component) {
+		controller.getMapper(C1S2.class).attachComponent(component, new C1S2());
+	}
+}
@@ -0,0 +1,30 @@
+package de.tum.ei.lkn.eces.core.mocks;
+
+import de.tum.ei.lkn.eces.core.ComponentStatus;
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
+import de.tum.ei.lkn.eces.core.annotations.RunsAfter;
+
+import java.util.List;
+
+/**
+ * Mock System whose listeners run after those of FirstSystem.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+@RunsAfter(FirstSystem.class)
+public class SecondSystem extends RootSystem {
+	private final List<String> log;
+
+	public SecondSystem(Controller controller, List<String> log) {
+		super(controller);
+		this.log = log;
+	}
+
+	@ComponentStateIs(State = ComponentStatus.New)
+	public void log(C1S1 component) {
+		log.add("second");
+	}
+}
@@ -0,0 +1,52 @@
+package de.tum.ei.lkn.eces.core.mocks;
+
+import de.tum.ei.lkn.eces.core.ComponentStatus;
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.core.annotations.ComponentStateIs;
+import de.tum.ei.lkn.eces.core.annotations.RunsSerially;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mock System whose listeners run serially and are not synchronized.
+ *
+ * @author Jochen Guck
+ * @author Amaury Van Bemten
+ */
+@RunsSerially
+public class SerialSystem extends RootSystem {
+	private final AtomicInteger active = new AtomicInteger();
+	public volatile boolean overlap = false;
+	public int newCount = 0;
+	public int cascadeCount = 0;
+
+	public SerialSystem(Controller controller) {
+		super(controller);
+	}
+
+	@ComponentStateIs(State = ComponentStatus.New)
+	public void countNew(C2S1 component) throws InterruptedException {
+		enter();
+		newCount++;
+		controller.getMapper(C1S2.class).attachComponent(component, new C1S2());
+		leave();
+	}
+
+	@ComponentStateIs(State = ComponentStatus.New)
+	public void countCascade(C1S2 component) throws InterruptedException {
+		enter();
+		cascadeCount++;
+		leave();
+	}
+
+	private void enter() throws InterruptedException {
+		if(active.incrementAndGet() > 1)
+			overlap = true;
+		Thread.sleep(1);
+	}
+
+	private void leave() {
+		active.decrementAndGet();
+	}
+}